@@ -0,0 +1,107 @@
+package com.xebialabs.deployit.ci.dar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xebialabs.deployit.booter.remote.RemoteDescriptor;
+import com.xebialabs.deployit.booter.remote.RemotePropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.Descriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyKind;
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+
+/**
+ * Encoding and decoding a descriptor set with {@link DescriptorCodec}, compared with the Java serialization the
+ * descriptors were sent to agents with before. The type system is synthetic, sized like a server with a few plugins.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DescriptorCodecBenchmark {
+
+    @Param({"200", "1000"})
+    public int types;
+
+    private List<Descriptor> descriptors;
+    private byte[] encoded;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        PropertyKind[] kinds = {PropertyKind.STRING, PropertyKind.INTEGER, PropertyKind.BOOLEAN, PropertyKind.SET_OF_STRING, PropertyKind.MAP_STRING_STRING};
+        descriptors = new ArrayList<Descriptor>();
+        for (int t = 0; t < types; t++) {
+            String typeName = "plugin" + (t % 10) + ".Type" + t;
+            List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+            for (int p = 0; p < 20; p++) {
+                RemotePropertyDescriptor pd = new RemotePropertyDescriptor();
+                pd.setName("property" + p);
+                pd.setFqn(typeName + ".property" + p);
+                pd.setKind(kinds[p % kinds.length]);
+                pd.setDefaultValue(p % 3 == 0 ? "default" + p : null);
+                properties.add(pd);
+            }
+            RemoteDescriptor descriptor = new RemoteDescriptor();
+            descriptor.setType(Type.valueOf(typeName));
+            descriptor.setPropertyDescriptors(properties);
+            descriptors.add(descriptor);
+        }
+        encoded = DescriptorCodec.encodeDescriptors(descriptors);
+        serialized = javaSerialization();
+    }
+
+    @Benchmark
+    public byte[] codecEncode() {
+        return DescriptorCodec.encodeDescriptors(descriptors);
+    }
+
+    @Benchmark
+    public Collection<Descriptor> codecDecode() {
+        return DescriptorCodec.decodeDescriptors(encoded);
+    }
+
+    @Benchmark
+    public byte[] javaSerialize() throws IOException {
+        return javaSerialization();
+    }
+
+    @Benchmark
+    public Object javaDeserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private byte[] javaSerialization() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(new ArrayList<Descriptor>(descriptors));
+        out.close();
+        return bytes.toByteArray();
+    }
+}
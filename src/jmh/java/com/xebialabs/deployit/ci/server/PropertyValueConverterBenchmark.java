@@ -0,0 +1,66 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.xebialabs.deployit.booter.remote.RemotePropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyKind;
+
+/**
+ * Converting the values of a typical set of deployable properties with the converters resolved once per property, as
+ * the property setters do, compared with resolving the converter from the property kind for every value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyValueConverterBenchmark {
+
+    private static final PropertyKind[] KINDS = {PropertyKind.STRING, PropertyKind.INTEGER, PropertyKind.BOOLEAN,
+            PropertyKind.SET_OF_STRING, PropertyKind.MAP_STRING_STRING, PropertyKind.STRING};
+    private static final String[] VALUES = {"/opt/app", "8080", "true", "web;batch", "env=prod&region=eu", "app-1.0.war"};
+
+    private PropertyDescriptor[] descriptors;
+    private PropertyValueConverter[] converters;
+
+    @Setup
+    public void setUp() {
+        descriptors = new PropertyDescriptor[KINDS.length];
+        converters = new PropertyValueConverter[KINDS.length];
+        for (int i = 0; i < KINDS.length; i++) {
+            RemotePropertyDescriptor pd = new RemotePropertyDescriptor();
+            pd.setName("property" + i);
+            pd.setKind(KINDS[i]);
+            descriptors[i] = pd;
+            converters[i] = PropertyValueConverter.forKind(KINDS[i]);
+        }
+    }
+
+    @Benchmark
+    public void precompiled(Blackhole blackhole) {
+        for (int i = 0; i < descriptors.length; i++) {
+            blackhole.consume(converters[i].convert(VALUES[i], descriptors[i]));
+        }
+    }
+
+    @Benchmark
+    public void resolvedPerValue(Blackhole blackhole) {
+        for (int i = 0; i < descriptors.length; i++) {
+            blackhole.consume(PropertyValueConverter.forKind(descriptors[i].getKind()).convert(VALUES[i], descriptors[i]));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.reflect.Reflection;
+
+/**
+ * Cost of a call through the proxy that guards every XL Deploy client call, compared with the reflective handler it
+ * replaced (context classloader swap and {@link Method#invoke} on every call) and with a direct call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyInvocationBenchmark {
+
+    public interface Registry {
+        String typeForName(String name);
+    }
+
+    static class RegistryImpl implements Registry {
+        @Override
+        public String typeForName(String name) {
+            return name;
+        }
+    }
+
+    private Registry direct;
+    private Registry handler;
+    private Registry reflective;
+
+    @Setup
+    public void setUp() {
+        direct = new RegistryImpl();
+        handler = Reflection.newProxy(Registry.class, new PluginFirstClassloaderInvocationHandler(direct, "http://localhost:4516"));
+        final Object target = direct;
+        reflective = Reflection.newProxy(Registry.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Thread currentThread = Thread.currentThread();
+                ClassLoader origClassLoader = currentThread.getContextClassLoader();
+                currentThread.setContextClassLoader(ProxyInvocationBenchmark.class.getClassLoader());
+                try {
+                    return method.invoke(target, args);
+                } finally {
+                    currentThread.setContextClassLoader(origClassLoader);
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public String directCall() {
+        return direct.typeForName("udm.Environment");
+    }
+
+    @Benchmark
+    public String pluginFirstHandler() {
+        return handler.typeForName("udm.Environment");
+    }
+
+    @Benchmark
+    public String reflectiveHandler() {
+        return reflective.typeForName("udm.Environment");
+    }
+}
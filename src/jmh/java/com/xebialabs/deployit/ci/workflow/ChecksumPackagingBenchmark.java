@@ -0,0 +1,109 @@
+package com.xebialabs.deployit.ci.workflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import hudson.EnvVars;
+
+/**
+ * Packaging a DAR with one file artifact: without checksums, with checksums computed while the artifact is copied
+ * into the package, and without checksums followed by a separate read of the artifact to hash it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChecksumPackagingBenchmark {
+
+    private static final String MANIFEST = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<udm.DeploymentPackage version=\"1.0\" application=\"benchmark\">\n" +
+            "    <deployables>\n" +
+            "        <jee.War name=\"/app\" file=\"/app/app.war\"/>\n" +
+            "    </deployables>\n" +
+            "</udm.DeploymentPackage>\n";
+
+    @Param({"8", "64"})
+    public int artifactMegabytes;
+
+    private File workspace;
+    private File artifact;
+    private EnvVars envVars;
+
+    @Setup
+    public void setUp() throws IOException {
+        workspace = Files.createTempDir();
+        File artifactDir = new File(workspace, "artifacts/app");
+        artifactDir.mkdirs();
+        artifact = new File(artifactDir, "app.war");
+        // random content, so deflating it costs what it costs for an already compressed archive
+        byte[] content = new byte[artifactMegabytes * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        Files.write(content, artifact);
+        Files.write(MANIFEST, new File(workspace, "deployit-manifest.xml"), Charsets.UTF_8);
+        envVars = new EnvVars("WORKSPACE", workspace.getAbsolutePath());
+    }
+
+    @Setup(Level.Invocation)
+    public void removePackage() {
+        new File(workspace, "app.dar").delete();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        delete(workspace);
+    }
+
+    @Benchmark
+    public String withoutChecksums() throws IOException {
+        return newPackageUtil(false).call();
+    }
+
+    @Benchmark
+    public String checksumsWhileCopying() throws IOException {
+        return newPackageUtil(true).call();
+    }
+
+    @Benchmark
+    public HashCode checksumsInSeparateRead() throws IOException {
+        newPackageUtil(false).call();
+        return Files.hash(artifact, Hashing.sha1());
+    }
+
+    private DARPackageUtil newPackageUtil(boolean checksums) {
+        DARPackageUtil packageUtil = new DARPackageUtil("artifacts", "deployit-manifest.xml", "app.dar", envVars);
+        packageUtil.setChecksums(checksums);
+        return packageUtil;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,72 @@
+package com.xebialabs.xltype.serialization.xstream;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xebialabs.deployit.engine.api.dto.ConfigurationItemId;
+
+import nl.javadude.scannit.Configuration;
+import nl.javadude.scannit.Scannit;
+import nl.javadude.scannit.scanner.TypeAnnotationScanner;
+
+/**
+ * Creating the provider, which resteasy does per client, against the classpath scan every creation used to repeat,
+ * and the memoized isReadable check made for every request and response body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterLookupBenchmark {
+
+    private static final Annotation[] NO_ANNOTATIONS = {};
+    private static final MediaType XML = MediaType.valueOf("application/xml");
+
+    private Configuration scanConfiguration;
+    private XStreamReaderWriterJenkins provider;
+    private Type idListType;
+
+    // typed field to take the generic type of a collection response from
+    List<ConfigurationItemId> ids;
+
+    @Setup
+    public void setUp() throws Exception {
+        scanConfiguration = Configuration.config().scan("com.xebialabs").with(new TypeAnnotationScanner());
+        Scannit.boot(scanConfiguration);
+        provider = new XStreamReaderWriterJenkins();
+        idListType = ConverterLookupBenchmark.class.getDeclaredField("ids").getGenericType();
+    }
+
+    @Benchmark
+    public Set<Class<?>> scanConverters() {
+        return new Scannit(scanConfiguration).getTypesAnnotatedWith(XStreamProvider.class);
+    }
+
+    @Benchmark
+    public XStreamReaderWriterJenkins createProvider() {
+        return new XStreamReaderWriterJenkins();
+    }
+
+    @Benchmark
+    public boolean isReadableCollection() {
+        return provider.isReadable(List.class, idListType, NO_ANNOTATIONS, XML);
+    }
+}
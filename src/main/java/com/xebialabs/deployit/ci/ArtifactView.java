@@ -27,6 +27,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.jvnet.localizer.Localizable;
@@ -39,6 +40,7 @@ import com.google.common.base.Strings;
 import com.xebialabs.deployit.ci.dar.RemoteLookup;
 import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
 import com.xebialabs.deployit.ci.server.DeployitServer;
+import com.xebialabs.deployit.ci.util.EnvTemplate;
 import com.xebialabs.deployit.ci.util.FileFinder;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
 import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
@@ -60,6 +62,8 @@ public class ArtifactView extends DeployableView {
 
     public String location;
 
+    private transient volatile EnvTemplate locationTemplate;
+
     @DataBoundConstructor
     public ArtifactView(String type, String name, String location, String tags, List<NameValuePair> properties) {
         super(type, name, tags, properties);
@@ -106,7 +110,9 @@ public class ArtifactView extends DeployableView {
         if (Strings.isNullOrEmpty(location)) {
             throw new DeployitPluginException(String.format("No location specified for '%s' of type '%s'", getName(), getType()));
         }
-        return envVars.expand(location);
+        EnvTemplate template = EnvTemplate.reuse(locationTemplate, location);
+        locationTemplate = template;
+        return template.expand(envVars);
     }
 
     static File findFileFromPattern(String pattern, FilePath workspace, JenkinsDeploymentListener listener) throws IOException {
@@ -115,6 +121,19 @@ public class ArtifactView extends DeployableView {
     }
 
     public static String findFilePathFromPattern(String pattern, FilePath workspace, JenkinsDeploymentListener listener) throws IOException {
+        List<String> filePaths = findFilePathsFromPattern(pattern, workspace, listener);
+        if (filePaths.size() > 1) {
+            final Localizable localizable = Messages._DeployitNotifier_TooManyFilesMatchingPattern();
+            listener.error(localizable);
+            throw new DeployitPluginException(String.valueOf(localizable));
+        }
+        return filePaths.get(0);
+    }
+
+    /**
+     * @return the absolute paths of all files matching the pattern, at least one
+     */
+    public static List<String> findFilePathsFromPattern(String pattern, FilePath workspace, JenkinsDeploymentListener listener) throws IOException {
         listener.info(String.format("Searching for '%s' in '%s'", pattern, workspace));
         FileFinder fileFinder = new FileFinder(pattern);
         List<String> fileNames;
@@ -124,18 +143,16 @@ public class ArtifactView extends DeployableView {
             throw new IOException(format("Interrupted while searching for '%s' in '%s'", pattern, workspace), exception);
         }
         listener.info("Found file(s): " + fileNames);
-        if (fileNames.size() > 1) {
-            final Localizable localizable = Messages._DeployitNotifier_TooManyFilesMatchingPattern();
-            listener.error(localizable);
-            throw new DeployitPluginException(String.valueOf(localizable));
-        } else if (fileNames.size() == 0) {
+        if (fileNames.size() == 0) {
             final Localizable localizable = Messages._DeployitNotifier_noArtifactsFound(pattern, workspace);
             listener.error(localizable);
             throw new DeployitPluginException(String.valueOf(localizable));
         }
-        // so we use only the first found
-        final String artifactPath = fileNames.get(0);
-        return new FilePath(workspace, artifactPath).getRemote();
+        List<String> filePaths = new ArrayList<String>(fileNames.size());
+        for (String fileName : fileNames) {
+            filePaths.add(new FilePath(workspace, fileName).getRemote());
+        }
+        return filePaths;
     }
 
     private static File fetchFile(String artifactPath, FilePath workspace) throws IOException {
@@ -47,6 +47,7 @@ import com.xebialabs.deployit.engine.api.dto.ServerInfo;
 
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
@@ -79,6 +80,13 @@ public class Credential extends AbstractDescribableImpl<Credential> {
     private final boolean useGlobalCredential;
     private final SecondaryServerInfo secondaryServerInfo;
     private final AuthType authType;
+    // 0 means the global upload settings apply
+    private int uploadConnectionPoolSize;
+    private int uploadSocketTimeout;
+    private int maxConcurrentUploads;
+    private int uploadBandwidthLimit;
+    // servers that predate bearer tokens take the token as the password of an empty user name
+    private boolean patAsBasic;
 
     private static final SchemeRequirement HTTP_SCHEME = new SchemeRequirement("http");
     private static final SchemeRequirement HTTPS_SCHEME = new SchemeRequirement("https");
@@ -117,7 +125,7 @@ public class Credential extends AbstractDescribableImpl<Credential> {
     public String getKey() {
         Secret effective = getEffectivePassword();
         String secretPart = effective != null ? effective.toString() : "";
-        return username + ":" + secretPart + "@" + name + ":" + credentialsId + ":" + authType;
+        return username + ":" + secretPart + "@" + name + ":" + credentialsId + ":" + authType + (patAsBasic ? ":basic" : "");
     }
 
     public String getAuthType() {
@@ -132,6 +140,22 @@ public class Credential extends AbstractDescribableImpl<Credential> {
         return authType == AuthType.PAT;
     }
 
+    public boolean isPatAsBasic() {
+        return patAsBasic;
+    }
+
+    @DataBoundSetter
+    public void setPatAsBasic(boolean patAsBasic) {
+        this.patAsBasic = patAsBasic;
+    }
+
+    /**
+     * Whether the token is sent as a bearer token rather than as the Basic password of an empty user name.
+     */
+    public boolean isBearerToken() {
+        return isPAT() && !patAsBasic;
+    }
+
     public String getName() {
         return name;
     }
@@ -175,6 +199,42 @@ public class Credential extends AbstractDescribableImpl<Credential> {
         return model;
     }
 
+    public int getUploadConnectionPoolSize() {
+        return uploadConnectionPoolSize;
+    }
+
+    @DataBoundSetter
+    public void setUploadConnectionPoolSize(int uploadConnectionPoolSize) {
+        this.uploadConnectionPoolSize = uploadConnectionPoolSize;
+    }
+
+    public int getUploadSocketTimeout() {
+        return uploadSocketTimeout;
+    }
+
+    @DataBoundSetter
+    public void setUploadSocketTimeout(int uploadSocketTimeout) {
+        this.uploadSocketTimeout = uploadSocketTimeout;
+    }
+
+    public int getMaxConcurrentUploads() {
+        return maxConcurrentUploads;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        this.maxConcurrentUploads = maxConcurrentUploads;
+    }
+
+    public int getUploadBandwidthLimit() {
+        return uploadBandwidthLimit;
+    }
+
+    @DataBoundSetter
+    public void setUploadBandwidthLimit(int uploadBandwidthLimit) {
+        this.uploadBandwidthLimit = uploadBandwidthLimit;
+    }
+
     public String getSecondaryServerUrl() {
         if (secondaryServerInfo != null) {
             return secondaryServerInfo.secondaryServerUrl;
@@ -378,7 +438,7 @@ public class Credential extends AbstractDescribableImpl<Credential> {
         }
 
         public FormValidation doValidateUserNamePassword(@QueryParameter String deployitServerUrl, @QueryParameter String deployitClientProxyUrl, @QueryParameter String username,
-                                                         @QueryParameter Secret password, @QueryParameter Secret patToken, @QueryParameter String secondaryServerUrl, @QueryParameter String secondaryProxyUrl, @QueryParameter String authType) throws IOException {
+                                                         @QueryParameter Secret password, @QueryParameter Secret patToken, @QueryParameter String secondaryServerUrl, @QueryParameter String secondaryProxyUrl, @QueryParameter String authType, @QueryParameter boolean patAsBasic) throws IOException {
             try {
                 String serverUrl = Strings.isNullOrEmpty(secondaryServerUrl) ? deployitServerUrl : secondaryServerUrl;
                 String proxyUrl = Strings.isNullOrEmpty(secondaryProxyUrl) ? deployitClientProxyUrl : secondaryProxyUrl;
@@ -399,7 +459,8 @@ public class Credential extends AbstractDescribableImpl<Credential> {
                     return FormValidation.error("No password or PAT token specified");
                 }
 
-                return validateConnection(serverUrl, proxyUrl, effectiveUsername, effectivePassword.getPlainText());
+                return validateConnection(serverUrl, proxyUrl, effectiveUsername, effectivePassword.getPlainText(),
+                        AuthType.PAT.name().equals(authType), patAsBasic);
             } catch (IllegalStateException e) {
                 return FormValidation.error(e.getMessage());
             } catch (Exception e) {
@@ -408,7 +469,7 @@ public class Credential extends AbstractDescribableImpl<Credential> {
         }
 
         @RequirePOST
-        public FormValidation doValidateCredential(@QueryParameter String deployitServerUrl, @QueryParameter String deployitClientProxyUrl, @QueryParameter String secondaryServerUrl, @QueryParameter String secondaryProxyUrl, @QueryParameter String credentialsId, @QueryParameter String authType) throws IOException {
+        public FormValidation doValidateCredential(@QueryParameter String deployitServerUrl, @QueryParameter String deployitClientProxyUrl, @QueryParameter String secondaryServerUrl, @QueryParameter String secondaryProxyUrl, @QueryParameter String credentialsId, @QueryParameter String authType, @QueryParameter boolean patAsBasic) throws IOException {
             Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
             try {
 
@@ -447,7 +508,7 @@ public class Credential extends AbstractDescribableImpl<Credential> {
                     effectivePassword = credentials.getPassword().getPlainText();
                 }
 
-                return validateConnection(serverUrl, proxyUrl, effectiveUsername, effectivePassword);
+                return validateConnection(serverUrl, proxyUrl, effectiveUsername, effectivePassword, AuthType.PAT.name().equals(authType), patAsBasic);
             } catch (IllegalStateException e) {
                 return FormValidation.error(e.getMessage());
             } catch (Exception e) {
@@ -471,8 +532,25 @@ public class Credential extends AbstractDescribableImpl<Credential> {
             );
         }
 
-        private FormValidation validateConnection(String serverUrl, String proxyUrl, String username, String password) throws Exception {
-            DeployitServer deployitServer = DeployitServerFactory.newInstance(serverUrl, proxyUrl, username, password, 10, DeployitServer.DEFAULT_SOCKET_TIMEOUT);
+        private FormValidation validateConnection(String serverUrl, String proxyUrl, String username, String password, boolean pat, boolean patAsBasic) throws Exception {
+            if (!pat || patAsBasic) {
+                return validateConnection(serverUrl, proxyUrl, username, password, false);
+            }
+            try {
+                return validateConnection(serverUrl, proxyUrl, username, password, true);
+            } catch (Exception bearerFailure) {
+                // older servers only take the token as a Basic password, tell the user instead of failing the check
+                try {
+                    validateConnection(serverUrl, proxyUrl, username, password, false);
+                } catch (Exception basicFailure) {
+                    throw bearerFailure;
+                }
+                return FormValidation.warning("Your XL Deploy instance does not accept the token as a bearer token, but accepts it as a Basic password. Enable 'Send token as Basic password'.");
+            }
+        }
+
+        private FormValidation validateConnection(String serverUrl, String proxyUrl, String username, String password, boolean bearerToken) throws Exception {
+            DeployitServer deployitServer = DeployitServerFactory.newInstance(serverUrl, proxyUrl, username, password, 10, DeployitServer.DEFAULT_SOCKET_TIMEOUT, bearerToken);
             ServerInfo serverInfo = deployitServer.getServerInfo();
             deployitServer.newCommunicator();
             return FormValidation.ok("Your XL Deploy instance [%s] is alive, and your credentials are valid!", serverInfo.getVersion());
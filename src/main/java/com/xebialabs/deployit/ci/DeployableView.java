@@ -28,6 +28,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 
 import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
+import com.xebialabs.deployit.ci.util.EnvTemplate;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
 import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
 
@@ -38,10 +39,8 @@ import hudson.model.Descriptor;
 import jenkins.model.Jenkins;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
-import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.collect.Sets.newHashSet;
 import static com.xebialabs.deployit.ci.util.Strings2.commaSeparatedListToList;
-import static com.xebialabs.deployit.ci.util.Strings2.stripEnclosingQuotes;
 
 public abstract class DeployableView implements Describable<DeployableView> {
 
@@ -50,6 +49,9 @@ public abstract class DeployableView implements Describable<DeployableView> {
     public String tags;
     public List<NameValuePair> properties;
 
+    // views are resolved concurrently, templates are immutable and published through the volatile field
+    private transient volatile EnvTemplate nameTemplate;
+
     protected DeployableView(String type, String name, String tags, List<NameValuePair> properties) {
         this.type = type;
         this.name = name;
@@ -71,16 +73,16 @@ public abstract class DeployableView implements Describable<DeployableView> {
 
     public ConfigurationItem toConfigurationItem(DeployitDescriptorRegistry registry, FilePath workspace, EnvVars envVars, JenkinsDeploymentListener listener) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(getName()), "Name is required.");
-        ConfigurationItem deployable = registry.newInstance(type, envVars.expand(getName()));
+        EnvTemplate template = EnvTemplate.reuse(nameTemplate, getName());
+        nameTemplate = template;
+        ConfigurationItem deployable = registry.newInstance(type, template.expand(envVars));
         if (!isNullOrEmpty(tags)) {
             deployable.setProperty("tags", newHashSet(commaSeparatedListToList(tags)));
         }
 
         if (properties != null) {
             for (NameValuePair pair : properties) {
-                String value = stripEnclosingQuotes(nullToEmpty(pair.propertyValue));
-                value = envVars.expand(value);
-                registry.setProperty(deployable, pair.propertyName, value);
+                registry.setProperty(deployable, pair.propertyName, pair.resolveValue(envVars));
             }
         }
 
@@ -26,12 +26,15 @@ package com.xebialabs.deployit.ci;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.common.IdCredentials;
 import com.cloudbees.plugins.credentials.domains.SchemeRequirement;
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
 import com.xebialabs.deployit.ci.DeployitPerformer.DeployitPerformerParameters;
 import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
 import com.xebialabs.deployit.ci.server.DeployitServer;
 import com.xebialabs.deployit.ci.server.DeployitServerFactory;
 import com.xebialabs.deployit.ci.util.PluginLogger;
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
 import hudson.Extension;
 import hudson.Launcher;
 import hudson.model.*;
@@ -57,8 +60,12 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.cloudbees.plugins.credentials.CredentialsProvider.lookupCredentials;
 import static hudson.util.FormValidation.*;
@@ -157,6 +164,10 @@ public class DeployitNotifier extends Notifier {
 
         private int connectionPoolSize = DeployitServer.DEFAULT_POOL_SIZE;
         private int socketTimeout = DeployitServer.DEFAULT_SOCKET_TIMEOUT;
+        private int uploadConnectionPoolSize = DeployitServer.DEFAULT_UPLOAD_POOL_SIZE;
+        private int uploadSocketTimeout = DeployitServer.DEFAULT_UPLOAD_SOCKET_TIMEOUT;
+        private int maxConcurrentUploadsPerServer;
+        private int uploadBandwidthLimitPerServer;
 
         private boolean globalRollbackOnError = Boolean.TRUE;
 		
@@ -167,19 +178,28 @@ public class DeployitNotifier extends Notifier {
         private static final SchemeRequirement HTTPS_SCHEME = new SchemeRequirement("https");
 
         // ************ OTHER NON-SERIALIZABLE PROPERTIES *********** //
-        private final transient Map<String, SoftReference<DeployitServer>> credentialServerMap = new HashMap<String, SoftReference<DeployitServer>>();
+        private final transient Map<String, CachedServer> credentialServerMap = new ConcurrentHashMap<String, CachedServer>();
 
         public DeployitDescriptor() {
             load();  //deserialize from xml
         }
 
-        private DeployitServer newDeployitServer(Credential credential, ItemGroup<?> itemGroup) {
+        private DeployitServer newDeployitServer(Credential credential, Login login) {
             String serverUrl = credential.resolveServerUrl(deployitServerUrl);
             String proxyUrl = credential.resolveProxyUrl(deployitClientProxyUrl);
 
             int newConnectionPoolSize = connectionPoolSize > 0 ? connectionPoolSize : DeployitServer.DEFAULT_POOL_SIZE;
             int newSocketTimeout = socketTimeout > 0 ? socketTimeout : DeployitServer.DEFAULT_SOCKET_TIMEOUT;
 
+            DeployitServer server = DeployitServerFactory.newInstance(serverUrl, proxyUrl, login.userName, login.password, newConnectionPoolSize, newSocketTimeout, credential.isBearerToken());
+            applyUploadSettings(server, credential);
+            return server;
+        }
+
+        /**
+         * Resolves the user name and password or token to log in with, looking up global credentials in the store.
+         */
+        private Login resolveLogin(Credential credential, ItemGroup<?> itemGroup) {
             String userName = credential.getUsername();
             String password;
 
@@ -215,22 +235,44 @@ public class DeployitNotifier extends Notifier {
                     throw new IllegalArgumentException(String.format("Credentials for '%s' do not contain a password or PAT token.", credential.getName()));
                 }
             }
-            return DeployitServerFactory.newInstance(serverUrl, proxyUrl, userName, password, newConnectionPoolSize, newSocketTimeout);
+            return new Login(userName, password);
+        }
+
+        private void applyUploadSettings(DeployitServer server, Credential credential) {
+            int poolSize = credential.getUploadConnectionPoolSize() > 0 ? credential.getUploadConnectionPoolSize()
+                    : uploadConnectionPoolSize > 0 ? uploadConnectionPoolSize : DeployitServer.DEFAULT_UPLOAD_POOL_SIZE;
+            int timeout = credential.getUploadSocketTimeout() > 0 ? credential.getUploadSocketTimeout()
+                    : uploadSocketTimeout > 0 ? uploadSocketTimeout : DeployitServer.DEFAULT_UPLOAD_SOCKET_TIMEOUT;
+            server.applyUploadSettings(poolSize, timeout);
+            server.applyUploadLimits(maxConcurrentUploadsPerServer, uploadBandwidthLimitPerServer,
+                    credential.getMaxConcurrentUploads(), credential.getUploadBandwidthLimit());
         }
 
         public DeployitServer getDeployitServer(Credential credential, Job<?, ?> project) {
+            return getDeployitServer(credential, project.getParent());
+        }
+
+        public DeployitServer getDeployitServer(Credential credential, ItemGroup<?> itemGroup) {
             DeployitServer deployitServer = null;
             if (null != credential) {
-                SoftReference<DeployitServer> deployitServerRef = credentialServerMap.get(credential.getKey());
-
-                if (null != deployitServerRef) {
-                    deployitServer = deployitServerRef.get();
+                String cacheKey = serverCacheKey(credential);
+                // global credentials are only referenced by id, a rotated password must not reuse the old server
+                Login login = resolveLogin(credential, itemGroup);
+                CachedServer cached = credentialServerMap.get(cacheKey);
+
+                if (null != cached) {
+                    deployitServer = cached.server.get();
+                    if (null != deployitServer && !cached.loginHash.equals(login.hash())) {
+                        deployitServer.close();
+                        deployitServer = null;
+                    }
                 }
 
+                XLDeployMetrics.getInstance().increment(XLDeployMetrics.SERVER_CACHE, "result", null == deployitServer ? "miss" : "hit");
                 if (null == deployitServer) {
                     synchronized (this) {
-                        deployitServer = newDeployitServer(credential, project.getParent());
-                        credentialServerMap.put(credential.getKey(), new SoftReference<DeployitServer>(deployitServer));
+                        deployitServer = newDeployitServer(credential, login);
+                        credentialServerMap.put(cacheKey, new CachedServer(deployitServer, login.hash()));
                     }
                 }
             }
@@ -238,6 +280,63 @@ public class DeployitNotifier extends Notifier {
             return deployitServer;
         }
 
+        /**
+         * Servers are cached per credential and the server and proxy urls it resolves to, so a configuration change
+         * only invalidates the servers whose connection identity actually changed. The resolved login is checked
+         * separately when a server is taken from the cache.
+         */
+        private String serverCacheKey(Credential credential) {
+            return credential.getKey() + "|" + credential.resolveServerUrl(deployitServerUrl) + "|" + credential.resolveProxyUrl(deployitClientProxyUrl);
+        }
+
+        private void refreshServerCache() {
+            Map<String, Credential> validKeys = new HashMap<String, Credential>();
+            if (credentials != null) {
+                for (Credential credential : credentials) {
+                    validKeys.put(serverCacheKey(credential), credential);
+                }
+            }
+            int newConnectionPoolSize = connectionPoolSize > 0 ? connectionPoolSize : DeployitServer.DEFAULT_POOL_SIZE;
+            int newSocketTimeout = socketTimeout > 0 ? socketTimeout : DeployitServer.DEFAULT_SOCKET_TIMEOUT;
+            Set<String> serverUrls = new HashSet<String>();
+            for (Iterator<Map.Entry<String, CachedServer>> it = credentialServerMap.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<String, CachedServer> entry = it.next();
+                DeployitServer server = entry.getValue().server.get();
+                if (server == null) {
+                    it.remove();
+                    continue;
+                }
+                if (!validKeys.containsKey(entry.getKey())) {
+                    it.remove();
+                    closeQuietly(server);
+                    continue;
+                }
+                try {
+                    if (!server.applyConnectionSettings(newConnectionPoolSize, newSocketTimeout)) {
+                        it.remove();
+                        closeQuietly(server);
+                    } else {
+                        applyUploadSettings(server, validKeys.get(entry.getKey()));
+                        serverUrls.add(server.getBooterConfig().getUrl());
+                    }
+                } catch (RuntimeException e) {
+                    PluginLogger.getInstance().warn("Could not apply connection settings to cached server, it will be recreated: {}", e.getMessage());
+                    it.remove();
+                    closeQuietly(server);
+                }
+            }
+            // the upload limits are shared per server url, forget those of servers no longer in use
+            DeployitServerFactory.retainUploadThrottles(serverUrls);
+        }
+
+        private static void closeQuietly(DeployitServer server) {
+            try {
+                server.close();
+            } catch (RuntimeException e) {
+                PluginLogger.getInstance().warn("Could not close evicted server: {}", e.getMessage());
+            }
+        }
+
         @Override
         public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
             //this method is called when the global form is submitted.
@@ -251,11 +350,23 @@ public class DeployitNotifier extends Notifier {
             if (!Strings.isNullOrEmpty(socketTimeoutString)) {
                 socketTimeout = Integer.parseInt(socketTimeoutString);
             }
+            String uploadConnectionPoolSizeString = json.optString("uploadConnectionPoolSize");
+            String uploadSocketTimeoutString = json.optString("uploadSocketTimeout");
+            if (!Strings.isNullOrEmpty(uploadConnectionPoolSizeString)) {
+                uploadConnectionPoolSize = Integer.parseInt(uploadConnectionPoolSizeString);
+            }
+            if (!Strings.isNullOrEmpty(uploadSocketTimeoutString)) {
+                uploadSocketTimeout = Integer.parseInt(uploadSocketTimeoutString);
+            }
+            String maxConcurrentUploadsPerServerString = json.optString("maxConcurrentUploadsPerServer");
+            String uploadBandwidthLimitPerServerString = json.optString("uploadBandwidthLimitPerServer");
+            maxConcurrentUploadsPerServer = Strings.isNullOrEmpty(maxConcurrentUploadsPerServerString) ? 0 : Integer.parseInt(maxConcurrentUploadsPerServerString);
+            uploadBandwidthLimitPerServer = Strings.isNullOrEmpty(uploadBandwidthLimitPerServerString) ? 0 : Integer.parseInt(uploadBandwidthLimitPerServerString);
 			String strRollbackOnError = json.get("globalRollbackOnError").toString();
             globalRollbackOnError = Boolean.valueOf(strRollbackOnError);
             credentials = req.bindJSONToList(Credential.class, json.get("credentials"));
             save();  //serialize to xml
-            credentialServerMap.clear(); // each time global config is changed clear server cache
+            refreshServerCache(); // drop servers whose url, proxy or credentials changed and resize the others in place
             return true;
         }
 
@@ -294,6 +405,22 @@ public class DeployitNotifier extends Notifier {
             return socketTimeout;
         }
 
+        public int getUploadConnectionPoolSize() {
+            return uploadConnectionPoolSize;
+        }
+
+        public int getUploadSocketTimeout() {
+            return uploadSocketTimeout;
+        }
+
+        public int getMaxConcurrentUploadsPerServer() {
+            return maxConcurrentUploadsPerServer;
+        }
+
+        public int getUploadBandwidthLimitPerServer() {
+            return uploadBandwidthLimitPerServer;
+        }
+
         public boolean getGlobalRollbackOnError() {
             return globalRollbackOnError;
         }
@@ -314,6 +441,22 @@ public class DeployitNotifier extends Notifier {
             this.socketTimeout = socketTimeout;
         }
 
+        public void setUploadConnectionPoolSize(int uploadConnectionPoolSize) {
+            this.uploadConnectionPoolSize = uploadConnectionPoolSize;
+        }
+
+        public void setUploadSocketTimeout(int uploadSocketTimeout) {
+            this.uploadSocketTimeout = uploadSocketTimeout;
+        }
+
+        public void setMaxConcurrentUploadsPerServer(int maxConcurrentUploadsPerServer) {
+            this.maxConcurrentUploadsPerServer = maxConcurrentUploadsPerServer;
+        }
+
+        public void setUploadBandwidthLimitPerServer(int uploadBandwidthLimitPerServer) {
+            this.uploadBandwidthLimitPerServer = uploadBandwidthLimitPerServer;
+        }
+
         public boolean isGlobalRollbackOnError() {
             return globalRollbackOnError;
         }
@@ -390,6 +533,41 @@ public class DeployitNotifier extends Notifier {
             return ok();
         }
 
+        @RequirePOST
+        public FormValidation doCheckUploadConnectionPoolSize(@QueryParameter String uploadConnectionPoolSize) {
+            return doCheckConnectionPoolSize(uploadConnectionPoolSize);
+        }
+
+        @RequirePOST
+        public FormValidation doCheckUploadSocketTimeout(@QueryParameter String uploadSocketTimeout) {
+            return doCheckSocketTimeout(uploadSocketTimeout);
+        }
+
+        @RequirePOST
+        public FormValidation doCheckMaxConcurrentUploadsPerServer(@QueryParameter String maxConcurrentUploadsPerServer) {
+            return checkOptionalLimit(maxConcurrentUploadsPerServer);
+        }
+
+        @RequirePOST
+        public FormValidation doCheckUploadBandwidthLimitPerServer(@QueryParameter String uploadBandwidthLimitPerServer) {
+            return checkOptionalLimit(uploadBandwidthLimitPerServer);
+        }
+
+        private FormValidation checkOptionalLimit(String limit) {
+            Jenkins.getInstance().checkPermission(Item.CONFIGURE);
+            if (Strings.isNullOrEmpty(limit)) {
+                return ok();
+            }
+            try {
+                if (Integer.parseInt(limit) < 0) {
+                    return error("Limit may not be negative, use 0 for unlimited.");
+                }
+            } catch (NumberFormatException e) {
+                return error("%s is not a valid integer.", limit);
+            }
+            return ok();
+        }
+
         public ListBoxModel doFillCredentialItems() {
             ListBoxModel m = new ListBoxModel();
             for (Credential c : credentials)
@@ -507,5 +685,30 @@ public class DeployitNotifier extends Notifier {
             resolvedValue = resolvedValue == null ? value : resolvedValue;
             return resolvedValue;
         }
+
+        private static final class CachedServer {
+            private final SoftReference<DeployitServer> server;
+            private final String loginHash;
+
+            CachedServer(DeployitServer server, String loginHash) {
+                this.server = new SoftReference<DeployitServer>(server);
+                this.loginHash = loginHash;
+            }
+        }
+
+        private static final class Login {
+            private final String userName;
+            private final String password;
+
+            Login(String userName, String password) {
+                this.userName = userName;
+                this.password = password;
+            }
+
+            /** Digest of user name and secret, so the cache does not keep the plain secret around. */
+            String hash() {
+                return Hashing.sha256().hashString(userName + "\u0000" + password, Charsets.UTF_8).toString();
+            }
+        }
     }
 }
@@ -20,7 +20,9 @@ import com.xebialabs.deployit.ci.dar.RemotePackaging;
 import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
 import com.xebialabs.deployit.ci.server.DeployitServer;
 import com.xebialabs.deployit.ci.server.DeployitServerFactory;
+import com.xebialabs.deployit.ci.util.ActionUtils;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
+import com.xebialabs.deployit.ci.util.PhaseTimer;
 import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
 import com.xebialabs.deployit.plugin.api.udm.DeploymentPackage;
 
@@ -45,8 +47,21 @@ class DeployitPerformer {
     }
 
     public boolean doPerform() throws InterruptedException, IOException {
+        try {
+            return perform();
+        } finally {
+            ActionUtils.addTimingAction(build, deploymentListener.getTimer());
+        }
+    }
+
+    private boolean perform() throws InterruptedException, IOException {
+        PhaseTimer timer = deploymentListener.getTimer();
         if (deploymentParameters.loadTypesOnStartup) {
-            deployitServer.reload();
+            try (PhaseTimer.Split ignored = timer.start("reload")) {
+                if (deployitServer.reloadIfTypesChanged()) {
+                    deploymentListener.info("XL Deploy type system changed, reloaded types");
+                }
+            }
         }
         final EnvVars envVars = build.getEnvironment(buildListener);
         String resolvedApplication = envVars.expand(deploymentParameters.application);
@@ -70,17 +85,22 @@ class DeployitPerformer {
             }
 
             DeployitDescriptorRegistry descriptorRegistry = deployitServer.getDescriptorRegistry();
-            DeploymentPackage deploymentPackage = deploymentParameters.packageOptions.toDeploymentPackage(resolvedApplication, resolvedVersion, deploymentParameters.packageProperties, descriptorRegistry, workspace, envVars, deploymentListener);
+            DeploymentPackage deploymentPackage;
+            try (PhaseTimer.Split ignored = timer.start("package.build", resolvedApplication)) {
+                deploymentPackage = deploymentParameters.packageOptions.toDeploymentPackage(resolvedApplication, resolvedVersion, deploymentParameters.packageProperties, descriptorRegistry, workspace, envVars, deploymentListener);
+            }
             final File targetDir = new File(workspace.absolutize().getRemote(), "deployitpackage");
 
-            String packagedPath = workspace.getChannel().call(
-                    new RemotePackaging()
-                            .withTargetDir(targetDir)
-                            .forDeploymentPackage(deploymentPackage)
-                            .usingConfig(deployitServer.getBooterConfig())
-                            .usingDescriptors(Lists.newArrayList(descriptorRegistry.getDescriptors()))
-                            .withRegistryVersion(deployitServer.getRegistryVersion())
-            );
+            String packagedPath;
+            try (PhaseTimer.Split ignored = timer.start("package.remote", resolvedApplication)) {
+                packagedPath = new RemotePackaging()
+                        .withTargetDir(targetDir)
+                        .forDeploymentPackage(deploymentPackage)
+                        .usingConfig(deployitServer.getBooterConfig())
+                        .usingDescriptors(Lists.newArrayList(descriptorRegistry.getDescriptors()))
+                        .withRegistryVersion(deployitServer.getRegistryVersion())
+                        .callOn(workspace.getChannel());
+            }
 
             if (deploymentParameters.importOptions != null && packagedPath != null) {
                 deploymentParameters.importOptions.setGeneratedDarLocation(packagedPath);
@@ -97,7 +117,10 @@ class DeployitPerformer {
                 final String darFileLocation = deploymentParameters.importOptions.getDarFileLocation(build.getWorkspace(), deploymentListener, envVars);
                 resolvedDarFileLocation = envVars.expand(darFileLocation);
                 deploymentListener.info(Messages.DeployitNotifier_import(resolvedDarFileLocation));
-                ConfigurationItem uploadedPackage = deployitServer.importPackage(resolvedDarFileLocation);
+                ConfigurationItem uploadedPackage;
+                try (PhaseTimer.Split ignored = timer.start("import", resolvedDarFileLocation)) {
+                    uploadedPackage = deployitServer.importPackage(resolvedDarFileLocation, deploymentListener);
+                }
                 deploymentListener.info(Messages.DeployitNotifier_imported(resolvedDarFileLocation));
                 importedVersion = uploadedPackage.getName();
             } catch (Exception e) {
@@ -23,9 +23,13 @@
 
 package com.xebialabs.deployit.ci;
 
-import com.google.common.base.Predicates;
-import com.google.common.collect.Iterables;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
 import com.xebialabs.deployit.ci.util.PluginLogger;
@@ -44,21 +48,35 @@ import net.sf.json.JSONObject;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.StaplerRequest;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.collect.Maps.newHashMap;
-import static com.xebialabs.deployit.ci.util.Strings2.stripEnclosingQuotes;
+import static com.google.common.collect.Sets.newHashSet;
 
 public class JenkinsPackageOptions implements Describable<JenkinsPackageOptions> {
 
     public final PluginLogger pluginLogger = PluginLogger.getInstance();
 
+    static final int PARALLELISM = Math.max(1, Integer.getInteger(JenkinsPackageOptions.class.getName() + ".parallelism", 8));
+
+    // shared by all builds, so concurrent builds together never resolve more than PARALLELISM deployables at once
+    private static final ExecutorService RESOLVER = newResolver();
+
     private final List<DeployableView> deployables;
 
+    private transient volatile DeployablesPlan plan;
+
     @DataBoundConstructor
     public JenkinsPackageOptions(List<DeployableView> deployables) {
         this.deployables = deployables;
@@ -82,22 +100,41 @@ public class JenkinsPackageOptions implements Describable<JenkinsPackageOptions>
             String msg = String.format("No deployables defined for deployment package. Application: '%s'.", applicationName);
             throw new DeployitPluginException(msg);
         }
-        List<DeployableView> sortedDeployables = sortDeployables(deployables);
-        for (DeployableView deployableView : sortedDeployables) {
-            ConfigurationItem deployable = deployableView.toConfigurationItem(registry, workspace, envVars, listener);
-            if (deployableView instanceof EmbeddedView) {
-                linkEmbeddedToParent(deployablesByFqn, deployable, (EmbeddedView) deployableView, registry, listener);
-            } else {
-                deploymentPackage.addDeployable((Deployable) deployable);
+        DeployablesPlan plan = getPlan();
+        List<DeployableView> topLevel = plan.topLevel;
+        List<ConfigurationItem> resolved = toConfigurationItems(topLevel, registry, workspace, envVars, listener);
+        Deque<String> parents = new ArrayDeque<String>();
+        for (int i = 0; i < topLevel.size(); i++) {
+            deploymentPackage.addDeployable((Deployable) resolved.get(i));
+            deployablesByFqn.put(topLevel.get(i).getFullyQualifiedName(), resolved.get(i));
+            parents.add(topLevel.get(i).getFullyQualifiedName());
+        }
+        // walk the tree breadth-first from the top-level deployables, every parent exists before its embeddeds
+        Set<String> visited = newHashSet();
+        while (!parents.isEmpty()) {
+            String parentName = parents.poll();
+            if (!visited.add(parentName)) {
+                continue;
+            }
+            for (EmbeddedView embeddedView : plan.embeddedsByParent.get(parentName)) {
+                ConfigurationItem deployable = embeddedView.toConfigurationItem(registry, workspace, envVars, listener);
+                linkEmbeddedToParent(deployablesByFqn, deployable, embeddedView, registry, listener);
+                deployablesByFqn.put(embeddedView.getFullyQualifiedName(), deployable);
+                parents.add(embeddedView.getFullyQualifiedName());
+            }
+        }
+        // anything left refers to a parent that is not part of the package
+        for (String parentName : Sets.difference(plan.embeddedsByParent.keySet(), visited)) {
+            for (EmbeddedView embeddedView : plan.embeddedsByParent.get(parentName)) {
+                ConfigurationItem deployable = embeddedView.toConfigurationItem(registry, workspace, envVars, listener);
+                linkEmbeddedToParent(deployablesByFqn, deployable, embeddedView, registry, listener);
             }
-            deployablesByFqn.put(deployableView.getFullyQualifiedName(), deployable);
         }
         deploymentPackage.setProperty("deployables", deploymentPackage.getDeployables());
 
         if (packageProperties != null) {
             for (NameValuePair pair : packageProperties) {
-                String value = stripEnclosingQuotes(nullToEmpty(pair.propertyValue));
-                value = envVars.expand(value);
+                String value = pair.resolveValue(envVars);
                 pluginLogger.debug("Registering a property for ci = {}, propName = {}, value = {} ", deploymentPackage, pair.propertyName, value);
                 registry.setProperty(deploymentPackage, pair.propertyName, value);
             }
@@ -105,21 +142,87 @@ public class JenkinsPackageOptions implements Describable<JenkinsPackageOptions>
         return deploymentPackage;
     }
 
-    private List<DeployableView> sortDeployables(List<DeployableView> deployables) {
-        List<DeployableView> result = Lists.newArrayList(Iterables.filter(deployables, Predicates.not(Predicates.instanceOf(EmbeddedView.class))));
-        List<EmbeddedView> embeddeds = /* double cast: dirty but quick */
-                (List<EmbeddedView>) (Object) Lists.newArrayList(Iterables.filter(deployables, Predicates.instanceOf(EmbeddedView.class)));
-        // sort the embeddeds on the number of /'s in the parent name
-        Collections.sort(embeddeds, new Comparator<EmbeddedView>() {
-            @Override
-            public int compare(EmbeddedView o1, EmbeddedView o2) {
-                return o1.getParentName().split("/").length - o2.getParentName().split("/").length;
-            }
-        });
-        result.addAll(embeddeds);
+    /**
+     * The deployables split into top-level ones and embeddeds per parent, kept for as long as this job configuration
+     * is. Deployables are immutable once configured; a new configuration creates new options.
+     */
+    private DeployablesPlan getPlan() {
+        DeployablesPlan result = plan;
+        if (result == null) {
+            result = new DeployablesPlan(deployables);
+            plan = result;
+        }
         return result;
     }
 
+    private static class DeployablesPlan {
+        private final List<DeployableView> topLevel;
+        private final ListMultimap<String, EmbeddedView> embeddedsByParent;
+
+        DeployablesPlan(List<DeployableView> deployables) {
+            ImmutableList.Builder<DeployableView> topLevel = ImmutableList.builder();
+            ImmutableListMultimap.Builder<String, EmbeddedView> embeddedsByParent = ImmutableListMultimap.builder();
+            for (DeployableView deployableView : deployables) {
+                if (deployableView instanceof EmbeddedView) {
+                    embeddedsByParent.put(((EmbeddedView) deployableView).getParentName(), (EmbeddedView) deployableView);
+                } else {
+                    topLevel.add(deployableView);
+                }
+            }
+            this.topLevel = topLevel.build();
+            this.embeddedsByParent = embeddedsByParent.build();
+        }
+    }
+
+    /**
+     * Resolves the deployables concurrently on the shared resolver threads, each artifact looks up its file on the
+     * workspace channel. The result is in the order of the given views.
+     */
+    private List<ConfigurationItem> toConfigurationItems(List<DeployableView> views, final DeployitDescriptorRegistry registry, final FilePath workspace, final EnvVars envVars, final JenkinsDeploymentListener listener) {
+        List<ConfigurationItem> result = Lists.newArrayListWithCapacity(views.size());
+        if (PARALLELISM <= 1 || views.size() <= 1) {
+            for (DeployableView view : views) {
+                result.add(view.toConfigurationItem(registry, workspace, envVars, listener));
+            }
+            return result;
+        }
+
+        List<Future<ConfigurationItem>> futures = Lists.newArrayListWithCapacity(views.size());
+        try {
+            for (final DeployableView view : views) {
+                futures.add(RESOLVER.submit(new Callable<ConfigurationItem>() {
+                    @Override
+                    public ConfigurationItem call() {
+                        return view.toConfigurationItem(registry, workspace, envVars, listener);
+                    }
+                }));
+            }
+            for (Future<ConfigurationItem> future : futures) {
+                result.add(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeployitPluginException("Interrupted while resolving deployables", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw new DeployitPluginException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            // the pool is shared, only this build's unfinished work is cancelled
+            for (Future<ConfigurationItem> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static ExecutorService newResolver() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("xld-deployables-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private void linkEmbeddedToParent(Map<String, ConfigurationItem> deployablesByFqn, ConfigurationItem deployable, final EmbeddedView embeddedView, DeployitDescriptorRegistry registry, JenkinsDeploymentListener listener) {
         ConfigurationItem parent = deployablesByFqn.get(embeddedView.getParentName());
         if (parent == null) {
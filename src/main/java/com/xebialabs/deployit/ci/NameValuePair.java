@@ -31,25 +31,41 @@ import hudson.model.Descriptor;
 import hudson.util.ListBoxModel;
 
 import java.util.Collection;
+import java.util.Map;
 
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
 import com.xebialabs.deployit.ci.server.DeployitServer;
+import com.xebialabs.deployit.ci.util.EnvTemplate;
 import com.xebialabs.deployit.ci.util.ListBoxModels;
 
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.xebialabs.deployit.ci.util.Strings2.stripEnclosingQuotes;
+
 public class NameValuePair extends AbstractDescribableImpl<NameValuePair> {
 
     public String propertyName;
     public String propertyValue;
 
+    private transient volatile EnvTemplate valueTemplate;
+
     @DataBoundConstructor
     public NameValuePair(String propertyName, String propertyValue) {
         this.propertyName = propertyName;
         this.propertyValue = propertyValue;
     }
 
+    /**
+     * @return the value without enclosing quotes, with build variables expanded
+     */
+    public String resolveValue(Map<String, String> envVars) {
+        EnvTemplate template = EnvTemplate.reuse(valueTemplate, stripEnclosingQuotes(nullToEmpty(propertyValue)));
+        valueTemplate = template;
+        return template.expand(envVars);
+    }
+
     @Extension
     public static class NameValuePairDescriptor extends Descriptor<NameValuePair> {
 
@@ -0,0 +1,110 @@
+package com.xebialabs.deployit.ci;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.model.Jenkins;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.xebialabs.deployit.ci.server.DeployitServer;
+
+/**
+ * Boots the communicator and downloads the type system for every configured credential in the background once jobs
+ * are loaded, so the first build or configuration page after a restart does not pay for it.
+ * Disable with {@code -Dcom.xebialabs.deployit.ci.ServerWarmup.disabled=true}.
+ */
+public class ServerWarmup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerWarmup.class);
+
+    static final boolean DISABLED = Boolean.getBoolean(ServerWarmup.class.getName() + ".disabled");
+    static final int MAX_CONCURRENCY = Math.max(1, Integer.getInteger(ServerWarmup.class.getName() + ".concurrency", 4));
+    static final long TIMEOUT_SECONDS = Long.getLong(ServerWarmup.class.getName() + ".timeoutSeconds", 300L);
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void warmUp() {
+        if (DISABLED) {
+            LOGGER.info("XL Deploy server warm-up disabled");
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                warmUpServers();
+            }
+        }, "xld-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    static void warmUpServers() {
+        Jenkins jenkins = Jenkins.getInstance();
+        if (jenkins == null) {
+            return;
+        }
+        final DeployitNotifier.DeployitDescriptor descriptor = jenkins.getDescriptorByType(DeployitNotifier.DeployitDescriptor.class);
+        if (descriptor == null || descriptor.getCredentials() == null || descriptor.getCredentials().isEmpty()) {
+            return;
+        }
+        warmUp(descriptor.getCredentials(), new ServerLookup() {
+            @Override
+            public DeployitServer getDeployitServer(Credential credential) {
+                return descriptor.getDeployitServer(credential, Jenkins.getInstance());
+            }
+        }, TIMEOUT_SECONDS);
+    }
+
+    /**
+     * Warms up the servers of the credentials, at most {@link #MAX_CONCURRENCY} at a time. Failures are logged and do
+     * not stop the others; warm-ups still running after the timeout are cancelled.
+     */
+    static void warmUp(List<Credential> credentials, final ServerLookup lookup, long timeoutSeconds) {
+        if (credentials.isEmpty()) {
+            return;
+        }
+        List<Callable<Void>> tasks = Lists.newArrayList();
+        for (final Credential credential : credentials) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    long start = System.currentTimeMillis();
+                    try {
+                        DeployitServer server = lookup.getDeployitServer(credential);
+                        if (server != null) {
+                            server.getDescriptorRegistry().getDescriptors();
+                            LOGGER.info("Warmed up XL Deploy server for credential '{}' in {} ms", credential.getName(), System.currentTimeMillis() - start);
+                        }
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("Could not warm up XL Deploy server for credential '{}': {}", credential.getName(), e.getMessage());
+                    }
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_CONCURRENCY, tasks.size()),
+                new ThreadFactoryBuilder().setNameFormat("xld-warmup-%d").setDaemon(true).build());
+        try {
+            // unfinished warm-ups are cancelled, the first real use boots the server as before
+            executor.invokeAll(tasks, timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    interface ServerLookup {
+        DeployitServer getDeployitServer(Credential credential);
+    }
+}
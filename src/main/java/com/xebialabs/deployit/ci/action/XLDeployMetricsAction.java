@@ -0,0 +1,57 @@
+package com.xebialabs.deployit.ci.action;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
+
+/**
+ * Exposes the XL Deploy client metrics to administrators at {@code /xldeploy-metrics/} (JSON) and
+ * {@code /xldeploy-metrics/prometheus} (Prometheus text format).
+ */
+@Extension
+public class XLDeployMetricsAction implements RootAction {
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "XL Deploy metrics";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "xldeploy-metrics";
+    }
+
+    public void doIndex(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("application/json;charset=UTF-8");
+        Writer writer = rsp.getCompressedWriter(req);
+        try {
+            XLDeployMetrics.getInstance().toJson().write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.getInstance().checkPermission(Jenkins.ADMINISTER);
+        rsp.setContentType("text/plain;version=0.0.4;charset=UTF-8");
+        Writer writer = rsp.getCompressedWriter(req);
+        try {
+            XLDeployMetrics.getInstance().writePrometheus(writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.xebialabs.deployit.ci.action;
+
+import hudson.model.InvisibleAction;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * POJO used to expose the duration of the xld packaging, import and deploy phases through jenkins api
+ */
+@ExportedBean(defaultVisibility = 2)
+public class XLDeployTimingAction extends InvisibleAction {
+    private List<Phase> phases;
+
+    public XLDeployTimingAction () {}
+
+    @Exported
+    public synchronized List<Phase> getPhases() {
+        return phases;
+    }
+
+    public synchronized void addPhase(String name, String target, long durationNanos) {
+        if (phases == null) {
+            phases = new ArrayList<>();
+        }
+
+        Phase phase = new Phase();
+        phase.setName(name);
+        phase.setTarget(target);
+        phase.setDurationNanos(durationNanos);
+
+        phases.add(phase);
+    }
+
+    public static class Phase {
+        private String name;
+        private String target;
+        private long durationNanos;
+
+        public Phase () {}
+
+        @Exported
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @Exported
+        public String getTarget() {
+            return target;
+        }
+
+        public void setTarget(String target) {
+            this.target = target;
+        }
+
+        @Exported
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public void setDurationNanos(long durationNanos) {
+            this.durationNanos = durationNanos;
+        }
+
+        @Exported
+        public long getDurationMillis() {
+            return durationNanos / 1000000L;
+        }
+    }
+}
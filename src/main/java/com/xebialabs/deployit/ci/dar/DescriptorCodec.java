@@ -0,0 +1,573 @@
+package com.xebialabs.deployit.ci.dar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Externalizable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.thoughtworks.xstream.converters.reflection.ReflectionProvider;
+import com.thoughtworks.xstream.core.JVM;
+
+import com.xebialabs.deployit.ci.DeployitPluginException;
+import com.xebialabs.deployit.plugin.api.reflect.Descriptor;
+
+/**
+ * Compact binary encoding of descriptor graphs for the remoting channel and the agent disk cache.
+ * <p>
+ * Strings and class names are written once and referenced by index afterwards, repeated objects are back-references
+ * and all numbers are varints. Fields are visited through XStream's reflection provider and written by name, so the
+ * encoding does not depend on the field order of the JVM. Classes with custom Java serialization hooks, and
+ * collections or maps other than the common JDK ones, are embedded as Java serialization.
+ * <p>
+ * Encoded descriptors may come from a cache volume shared by several agents, so decoding only loads the classes
+ * descriptors are made of ({@link #DESCRIPTOR_CLASSES}), also inside embedded Java serialization. Anything else in
+ * the remote booter or plugin API, configuration items included, is rejected.
+ */
+public final class DescriptorCodec {
+
+    private static final int MAGIC = 0x584c4431; // "XLD1"
+
+    private static final int NULL = 0;
+    private static final int BACK_REFERENCE = 1;
+    private static final int STRING = 2;
+    private static final int TRUE = 3;
+    private static final int FALSE = 4;
+    private static final int INT = 5;
+    private static final int LONG = 6;
+    private static final int ENUM = 7;
+    private static final int OBJECT = 8;
+    private static final int COLLECTION = 9;
+    private static final int MAP = 10;
+    private static final int ARRAY = 11;
+    private static final int SERIALIZED = 12;
+    private static final int DOUBLE = 13;
+    private static final int FLOAT = 14;
+    private static final int CHAR = 15;
+    private static final int BYTE = 16;
+    private static final int SHORT = 17;
+    private static final int CLASS = 18;
+
+    private static final Set<Class<?>> COLLECTION_CLASSES = ImmutableSet.<Class<?>>of(
+            ArrayList.class, LinkedList.class, HashSet.class, LinkedHashSet.class);
+    private static final Set<Class<?>> MAP_CLASSES = ImmutableSet.<Class<?>>of(HashMap.class, LinkedHashMap.class);
+    private static final Map<String, Class<?>> PRIMITIVES = ImmutableMap.<String, Class<?>>builder()
+            .put("boolean", boolean.class).put("byte", byte.class).put("char", char.class).put("short", short.class)
+            .put("int", int.class).put("long", long.class).put("float", float.class).put("double", double.class)
+            .build();
+
+    // the classes a remote descriptor graph is made of, their nested classes and enums included
+    private static final Set<String> DESCRIPTOR_GRAPH_CLASSES = ImmutableSet.of(
+            "com.xebialabs.deployit.booter.remote.RemoteDescriptor",
+            "com.xebialabs.deployit.booter.remote.RemotePropertyDescriptor",
+            "com.xebialabs.deployit.booter.remote.RemoteMethodDescriptor",
+            "com.xebialabs.deployit.booter.remote.RemoteParameterDescriptor",
+            "com.xebialabs.deployit.plugin.api.reflect.Type",
+            "com.xebialabs.deployit.plugin.api.reflect.PropertyKind",
+            "com.xebialabs.deployit.plugin.api.reflect.InputHint",
+            "com.xebialabs.deployit.plugin.api.reflect.InputHintValue",
+            "com.xebialabs.deployit.plugin.api.udm.Metadata",
+            // types refer to the registry they belong to, which is the booter config with its request interceptors
+            "com.xebialabs.deployit.booter.remote.BooterConfig",
+            "com.xebialabs.deployit.ci.server.PreemptiveAuthenticationInterceptor",
+            "org.apache.http.HttpHost");
+    private static final List<String> ALLOWED_PREFIXES = ImmutableList.of(
+            // serialized forms of Guava's immutable collections and the JDK's collection wrappers
+            "com.google.common.collect.Immutable", "java.util.Collections$");
+    private static final Set<String> ALLOWED_CLASSES = ImmutableSet.of(
+            "java.lang.Object", "java.lang.String", "java.lang.Boolean", "java.lang.Integer", "java.lang.Long",
+            "java.lang.Short", "java.lang.Byte", "java.lang.Character", "java.lang.Double", "java.lang.Float",
+            "java.lang.Number", "java.lang.Enum", "java.util.ArrayList", "java.util.LinkedList", "java.util.HashSet",
+            "java.util.LinkedHashSet", "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+            "java.util.TreeSet", "java.util.Arrays$ArrayList", "java.util.EnumSet$SerializationProxy");
+
+    /**
+     * Accepts the names of the classes a descriptor graph is made of: the remote descriptor classes and the types,
+     * enums and booter config they refer to, boxed primitives, strings and the common JDK and Guava collections.
+     */
+    public static final Predicate<String> DESCRIPTOR_CLASSES = new Predicate<String>() {
+        @Override
+        public boolean apply(String className) {
+            if (ALLOWED_CLASSES.contains(className) || DESCRIPTOR_GRAPH_CLASSES.contains(className)) {
+                return true;
+            }
+            int nested = className.indexOf('$');
+            if (nested > 0 && DESCRIPTOR_GRAPH_CLASSES.contains(className.substring(0, nested))) {
+                return true;
+            }
+            for (String allowedPrefix : ALLOWED_PREFIXES) {
+                if (className.startsWith(allowedPrefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    };
+
+    private static final Set<String> SERIALIZATION_HOOKS = ImmutableSet.of("writeObject", "readObject", "writeReplace", "readResolve");
+
+    private static final ReflectionProvider REFLECTION = JVM.newReflectionProvider();
+    private static final ConcurrentMap<Class<?>, Boolean> USES_JAVA_SERIALIZATION = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    private DescriptorCodec() {
+    }
+
+    public static byte[] encodeDescriptors(Collection<Descriptor> descriptors) {
+        return encode(new ArrayList<Descriptor>(descriptors));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Collection<Descriptor> decodeDescriptors(byte[] data) {
+        Object decoded = decode(data);
+        if (!(decoded instanceof Collection)) {
+            throw new DeployitPluginException("Cannot decode descriptors: not a descriptor set");
+        }
+        for (Object descriptor : (Collection<?>) decoded) {
+            if (!(descriptor instanceof Descriptor)) {
+                throw new DeployitPluginException("Cannot decode descriptors: unexpected " + (descriptor == null ? null : descriptor.getClass().getName()));
+            }
+        }
+        return (Collection<Descriptor>) decoded;
+    }
+
+    public static byte[] encode(Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            new Writer(out).write(value);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new DeployitPluginException("Cannot encode " + value.getClass().getName(), e);
+        }
+    }
+
+    public static Object decode(byte[] data) {
+        return decode(data, DESCRIPTOR_CLASSES);
+    }
+
+    /**
+     * @param allowedClasses names of the classes the data may contain, arrays are checked by their element class
+     */
+    static Object decode(byte[] data, Predicate<String> allowedClasses) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an encoded descriptor set");
+            }
+            return new Reader(in, allowedClasses).read();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new DeployitPluginException("Cannot decode descriptors: " + e.getMessage(), e);
+        }
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarint(DataInputStream in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static boolean usesJavaSerialization(Class<?> type) {
+        Boolean result = USES_JAVA_SERIALIZATION.get(type);
+        if (result == null) {
+            result = Externalizable.class.isAssignableFrom(type) || hasSerializationHook(type)
+                    || (Collection.class.isAssignableFrom(type) && !COLLECTION_CLASSES.contains(type))
+                    || (Map.class.isAssignableFrom(type) && !MAP_CLASSES.contains(type));
+            USES_JAVA_SERIALIZATION.put(type, result);
+        }
+        return result;
+    }
+
+    private static boolean hasSerializationHook(Class<?> type) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (SERIALIZATION_HOOKS.contains(method.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Writer {
+        private final DataOutputStream out;
+        private final Map<String, Integer> strings = new HashMap<String, Integer>();
+        private final Map<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(Object value) throws IOException {
+            if (value == null) {
+                writeVarint(out, NULL);
+                return;
+            }
+            Class<?> type = value.getClass();
+            if (type == String.class) {
+                writeVarint(out, STRING);
+                writeString((String) value);
+            } else if (type == Boolean.class) {
+                writeVarint(out, (Boolean) value ? TRUE : FALSE);
+            } else if (type == Integer.class) {
+                writeVarint(out, INT);
+                writeVarint(out, zigZag((Integer) value));
+            } else if (type == Long.class) {
+                writeVarint(out, LONG);
+                writeVarint(out, zigZag((Long) value));
+            } else if (type == Short.class) {
+                writeVarint(out, SHORT);
+                writeVarint(out, zigZag((Short) value));
+            } else if (type == Byte.class) {
+                writeVarint(out, BYTE);
+                out.writeByte((Byte) value);
+            } else if (type == Character.class) {
+                writeVarint(out, CHAR);
+                writeVarint(out, (Character) value);
+            } else if (type == Double.class) {
+                writeVarint(out, DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (type == Float.class) {
+                writeVarint(out, FLOAT);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Class) {
+                writeVarint(out, CLASS);
+                writeString(((Class<?>) value).getName());
+            } else if (value instanceof Enum) {
+                writeVarint(out, ENUM);
+                writeString(((Enum<?>) value).getDeclaringClass().getName());
+                writeString(((Enum<?>) value).name());
+            } else if (objects.containsKey(value)) {
+                writeVarint(out, BACK_REFERENCE);
+                writeVarint(out, objects.get(value));
+            } else {
+                objects.put(value, objects.size());
+                writeObject(value, type);
+            }
+        }
+
+        private void writeObject(Object value, Class<?> type) throws IOException {
+            if (type.isArray()) {
+                writeVarint(out, ARRAY);
+                writeString(type.getComponentType().getName());
+                int length = Array.getLength(value);
+                writeVarint(out, length);
+                for (int i = 0; i < length; i++) {
+                    write(Array.get(value, i));
+                }
+            } else if (usesJavaSerialization(type)) {
+                writeVarint(out, SERIALIZED);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+                objectOut.writeObject(value);
+                objectOut.close();
+                writeVarint(out, bytes.size());
+                bytes.writeTo(out);
+            } else if (value instanceof Collection) {
+                writeVarint(out, COLLECTION);
+                writeString(type.getName());
+                Collection<?> collection = (Collection<?>) value;
+                writeVarint(out, collection.size());
+                for (Object item : collection) {
+                    write(item);
+                }
+            } else if (value instanceof Map) {
+                writeVarint(out, MAP);
+                writeString(type.getName());
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeVarint(out, map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    write(entry.getKey());
+                    write(entry.getValue());
+                }
+            } else {
+                writeVarint(out, OBJECT);
+                writeString(type.getName());
+                final List<Object[]> fields = new ArrayList<Object[]>();
+                REFLECTION.visitSerializableFields(value, new ReflectionProvider.Visitor() {
+                    @Override
+                    public void visit(String name, Class fieldType, Class definedIn, Object fieldValue) {
+                        fields.add(new Object[]{definedIn.getName(), name, fieldValue});
+                    }
+                });
+                writeVarint(out, fields.size());
+                for (Object[] field : fields) {
+                    writeString((String) field[0]);
+                    writeString((String) field[1]);
+                    write(field[2]);
+                }
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarint(out, index);
+                return;
+            }
+            // a new string is announced by the next free index
+            writeVarint(out, strings.size());
+            strings.put(value, strings.size());
+            byte[] utf8 = value.getBytes(Charsets.UTF_8);
+            writeVarint(out, utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static final class Reader {
+        private final DataInputStream in;
+        private final List<String> strings = new ArrayList<String>();
+        private final List<Object> objects = new ArrayList<Object>();
+        private final ClassLoader classLoader = DescriptorCodec.class.getClassLoader();
+        private final Predicate<String> allowedClasses;
+
+        Reader(DataInputStream in, Predicate<String> allowedClasses) {
+            this.in = in;
+            this.allowedClasses = allowedClasses;
+        }
+
+        Object read() throws IOException, ClassNotFoundException {
+            int tag = (int) readVarint(in);
+            switch (tag) {
+                case NULL:
+                    return null;
+                case BACK_REFERENCE:
+                    long index = readVarint(in);
+                    if (index >= objects.size()) {
+                        throw new IOException("Invalid back-reference " + index);
+                    }
+                    return objects.get((int) index);
+                case STRING:
+                    return readString();
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case INT:
+                    return (int) unZigZag(readVarint(in));
+                case LONG:
+                    return unZigZag(readVarint(in));
+                case SHORT:
+                    return (short) unZigZag(readVarint(in));
+                case BYTE:
+                    return in.readByte();
+                case CHAR:
+                    return (char) readVarint(in);
+                case DOUBLE:
+                    return in.readDouble();
+                case FLOAT:
+                    return in.readFloat();
+                case CLASS:
+                    return classForName(readString());
+                case ENUM:
+                    return readEnum();
+                case ARRAY:
+                    return readArray();
+                case SERIALIZED:
+                    return readSerialized();
+                case COLLECTION:
+                    return readCollection();
+                case MAP:
+                    return readMap();
+                case OBJECT:
+                    return readObject();
+                default:
+                    throw new IOException("Unknown tag " + tag);
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readEnum() throws IOException, ClassNotFoundException {
+            Class enumType = classForName(readString());
+            if (!enumType.isEnum()) {
+                throw new InvalidClassException(enumType.getName(), "not an enum");
+            }
+            return Enum.valueOf(enumType, readString());
+        }
+
+        private Object readArray() throws IOException, ClassNotFoundException {
+            Class<?> componentType = classForName(readString());
+            int length = readLength();
+            Object array = Array.newInstance(componentType, length);
+            objects.add(array);
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, read());
+            }
+            return array;
+        }
+
+        private Object readSerialized() throws IOException, ClassNotFoundException {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            // every class in the stream, including those of nested objects, passes the same check before it is loaded
+            ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    return classForName(desc.getName());
+                }
+
+                @Override
+                protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+                    throw new InvalidClassException("Proxy classes are not allowed in descriptor data");
+                }
+            };
+            Object value = objectIn.readObject();
+            objects.add(value);
+            return value;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readCollection() throws IOException, ClassNotFoundException {
+            Class<?> type = classForName(readString());
+            if (!COLLECTION_CLASSES.contains(type)) {
+                throw new InvalidClassException(type.getName(), "not an encodable collection");
+            }
+            Collection<Object> collection = (Collection<Object>) newInstance(type);
+            objects.add(collection);
+            int size = readLength();
+            for (int i = 0; i < size; i++) {
+                collection.add(read());
+            }
+            return collection;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object readMap() throws IOException, ClassNotFoundException {
+            Class<?> type = classForName(readString());
+            if (!MAP_CLASSES.contains(type)) {
+                throw new InvalidClassException(type.getName(), "not an encodable map");
+            }
+            Map<Object, Object> map = (Map<Object, Object>) newInstance(type);
+            objects.add(map);
+            int size = readLength();
+            for (int i = 0; i < size; i++) {
+                Object key = read();
+                map.put(key, read());
+            }
+            return map;
+        }
+
+        private Object readObject() throws IOException, ClassNotFoundException {
+            Class<?> type = classForName(readString());
+            if (usesJavaSerialization(type) || type.isArray()) {
+                throw new InvalidClassException(type.getName(), "not encoded field by field");
+            }
+            Object value = REFLECTION.newInstance(type);
+            objects.add(value);
+            int fields = readLength();
+            for (int i = 0; i < fields; i++) {
+                Class<?> definedIn = classForName(readString());
+                String name = readString();
+                REFLECTION.writeField(value, name, read(), definedIn);
+            }
+            return value;
+        }
+
+        private Object newInstance(Class<?> type) throws IOException {
+            try {
+                return type.newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IOException("Cannot instantiate " + type.getName(), e);
+            }
+        }
+
+        private String readString() throws IOException {
+            long index = readVarint(in);
+            if (index < strings.size()) {
+                return strings.get((int) index);
+            }
+            if (index > strings.size()) {
+                throw new IOException("Invalid string reference " + index);
+            }
+            byte[] utf8 = new byte[readLength()];
+            in.readFully(utf8);
+            String value = new String(utf8, Charsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        /**
+         * Every element of the data holds at least one byte, so a length beyond the remaining data is corrupt and is
+         * rejected before anything is allocated for it.
+         */
+        private int readLength() throws IOException {
+            long length = readVarint(in);
+            if (length > in.available()) {
+                throw new IOException("Length " + length + " exceeds the remaining data");
+            }
+            return (int) length;
+        }
+
+        private Class<?> classForName(String name) throws IOException, ClassNotFoundException {
+            Class<?> primitive = PRIMITIVES.get(name);
+            if (primitive != null) {
+                return primitive;
+            }
+            if (!allowedClasses.apply(elementClassName(name))) {
+                throw new InvalidClassException(name, "not allowed in descriptor data");
+            }
+            return Class.forName(name, false, classLoader);
+        }
+
+        private String elementClassName(String name) {
+            int dimensions = 0;
+            while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            if (dimensions == 0) {
+                return name;
+            }
+            String element = name.substring(dimensions);
+            // arrays of primitives are written as a single letter, e.g. [I
+            return element.startsWith("L") && element.endsWith(";") ? element.substring(1, element.length() - 1) : "java.lang.Object";
+        }
+    }
+}
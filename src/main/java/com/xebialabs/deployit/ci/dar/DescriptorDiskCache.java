@@ -0,0 +1,166 @@
+package com.xebialabs.deployit.ci.dar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+
+import com.xebialabs.deployit.booter.remote.BooterConfig;
+
+/**
+ * Agent-local store of descriptor sets, so agents sharing a cache volume do not need the type system sent over
+ * remoting after a restart. Enabled by starting the agent with
+ * {@code -Dcom.xebialabs.deployit.ci.dar.DescriptorDiskCache.dir=/path/to/cache}.
+ * <p>
+ * Each file starts with a signature of its name and content, made on the controller with a private key that never
+ * leaves it. Agents verify files with the controller's public key, sent along with the packaging call, and ignore
+ * files that do not verify. Whoever else can write to the volume, other agents included, cannot make agents decode
+ * data of their choosing; at most they can put back a file the controller signed for the same server and registry
+ * version.
+ */
+class DescriptorDiskCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DescriptorDiskCache.class);
+
+    static final String DIR_PROPERTY = DescriptorDiskCache.class.getName() + ".dir";
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    // an RSA signature of up to 8192 bits
+    private static final int MAX_SIGNATURE_LENGTH = 1024;
+
+    private DescriptorDiskCache() {
+    }
+
+    static boolean isEnabled() {
+        return getDirectory() != null;
+    }
+
+    static boolean contains(BooterConfig booterConfig, String registryVersion) {
+        File file = file(booterConfig, registryVersion);
+        return file != null && file.isFile();
+    }
+
+    /**
+     * Signs encoded descriptors for the cache file of the server and registry version, on the controller.
+     */
+    static byte[] sign(PrivateKey privateKey, BooterConfig booterConfig, String registryVersion, byte[] encodedDescriptors) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initSign(privateKey);
+        update(signature, fileName(booterConfig, registryVersion), encodedDescriptors);
+        return signature.sign();
+    }
+
+    /**
+     * @return the encoded descriptors, or null when they are not cached or the file does not verify under the key
+     */
+    static byte[] load(BooterConfig booterConfig, String registryVersion, PublicKey verificationKey) {
+        File file = file(booterConfig, registryVersion);
+        if (file == null || verificationKey == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            byte[] content = Files.toByteArray(file);
+            int signatureLength = content.length < Ints.BYTES ? -1 : Ints.fromByteArray(content);
+            if (signatureLength <= 0 || signatureLength > MAX_SIGNATURE_LENGTH || signatureLength > content.length - Ints.BYTES) {
+                LOGGER.warn("Ignoring descriptor cache file {}, it is truncated or not a descriptor cache file", file);
+                return null;
+            }
+            byte[] signature = Arrays.copyOfRange(content, Ints.BYTES, Ints.BYTES + signatureLength);
+            byte[] encodedDescriptors = Arrays.copyOfRange(content, Ints.BYTES + signatureLength, content.length);
+            if (!verify(verificationKey, file.getName(), signature, encodedDescriptors)) {
+                LOGGER.warn("Ignoring descriptor cache file {}, it was not signed by this controller", file);
+                return null;
+            }
+            LOGGER.debug("Loaded {} bytes of descriptors from {}", encodedDescriptors.length, file);
+            return encodedDescriptors;
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.warn("Ignoring unreadable descriptor cache file {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores descriptors as encoded by {@link DescriptorCodec} with the controller's signature, replacing a file that
+     * does not verify under the key. Descriptors whose signature does not verify are not stored.
+     */
+    static void store(BooterConfig booterConfig, String registryVersion, PublicKey verificationKey, byte[] signature, byte[] encodedDescriptors) {
+        File file = file(booterConfig, registryVersion);
+        if (file == null || verificationKey == null || signature == null || load(booterConfig, registryVersion, verificationKey) != null) {
+            return;
+        }
+        File dir = file.getParentFile();
+        File tmp = null;
+        try {
+            if (!verify(verificationKey, file.getName(), signature, encodedDescriptors)) {
+                LOGGER.warn("Not storing descriptors in {}, their signature does not verify", file);
+                return;
+            }
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            // write to a temporary file and rename, agents sharing the volume must never see a partial file
+            tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            Files.write(Bytes.concat(Ints.toByteArray(signature.length), signature, encodedDescriptors), tmp);
+            // replaces a file that did not verify
+            java.nio.file.Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Stored {} bytes of descriptors in {}", encodedDescriptors.length, file);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            LOGGER.warn("Could not store descriptors in {}: {}", file, e.getMessage());
+        } finally {
+            if (tmp != null && tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static boolean verify(PublicKey verificationKey, String fileName, byte[] signatureBytes, byte[] encodedDescriptors) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+        signature.initVerify(verificationKey);
+        update(signature, fileName, encodedDescriptors);
+        try {
+            return signature.verify(signatureBytes);
+        } catch (SignatureException e) {
+            // not a signature of this key's length or format
+            return false;
+        }
+    }
+
+    private static void update(Signature signature, String fileName, byte[] encodedDescriptors) throws SignatureException {
+        // the name binds the content to its server and registry version
+        signature.update(fileName.getBytes(Charsets.UTF_8));
+        signature.update(encodedDescriptors);
+    }
+
+    private static File getDirectory() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        return Strings.isNullOrEmpty(dir) ? null : new File(dir);
+    }
+
+    private static File file(BooterConfig booterConfig, String registryVersion) {
+        File dir = getDirectory();
+        if (dir == null || registryVersion == null) {
+            return null;
+        }
+        return new File(dir, fileName(booterConfig, registryVersion));
+    }
+
+    private static String fileName(BooterConfig booterConfig, String registryVersion) {
+        // types refer to the registry they belong to, so the server identity is part of the key
+        return Hashing.sha1().hashString(booterConfig.getKey() + "@" + registryVersion, Charsets.UTF_8).toString() + ".descriptors";
+    }
+}
@@ -0,0 +1,27 @@
+package com.xebialabs.deployit.ci.dar;
+
+import java.security.GeneralSecurityException;
+
+import jenkins.security.RSAConfidentialKey;
+
+import com.xebialabs.deployit.booter.remote.BooterConfig;
+import com.xebialabs.deployit.ci.DeployitPluginException;
+
+/**
+ * Key pair of the controller for the agent disk cache: descriptors are signed on the controller, agents only get
+ * the public key to verify the files with.
+ */
+class DescriptorSigningKey extends RSAConfidentialKey {
+
+    DescriptorSigningKey(Class<?> owner, String shortName) {
+        super(owner, shortName);
+    }
+
+    byte[] sign(BooterConfig booterConfig, String registryVersion, byte[] encodedDescriptors) {
+        try {
+            return DescriptorDiskCache.sign(getPrivateKey(), booterConfig, registryVersion, encodedDescriptors);
+        } catch (GeneralSecurityException e) {
+            throw new DeployitPluginException("Cannot sign descriptors for the agent cache", e);
+        }
+    }
+}
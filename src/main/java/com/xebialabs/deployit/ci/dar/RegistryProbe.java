@@ -0,0 +1,32 @@
+package com.xebialabs.deployit.ci.dar;
+
+import hudson.remoting.Callable;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+import com.xebialabs.deployit.booter.remote.BooterConfig;
+
+/**
+ * Asks an agent whether it already has the descriptors of a registry version, before they are sent with
+ * {@link RemotePackaging}.
+ */
+public class RegistryProbe implements Callable<Boolean, RuntimeException> {
+
+    private final BooterConfig booterConfig;
+    private final String registryVersion;
+
+    public RegistryProbe(BooterConfig booterConfig, String registryVersion) {
+        this.booterConfig = booterConfig;
+        this.registryVersion = registryVersion;
+    }
+
+    @Override
+    public Boolean call() throws RuntimeException {
+        return SlaveRemoteDescriptorRegistry.isAvailable(booterConfig, registryVersion);
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+
+    }
+}
@@ -24,10 +24,16 @@
 package com.xebialabs.deployit.ci.dar;
 
 import hudson.remoting.Callable;
+import hudson.remoting.VirtualChannel;
 
 import java.io.File;
+import java.io.IOException;
+import java.security.PublicKey;
 import java.util.Collection;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 import com.xebialabs.deployit.booter.remote.BooterConfig;
 import com.xebialabs.deployit.ci.Versioned;
 import com.xebialabs.deployit.packager.DarPackager;
@@ -59,11 +65,20 @@ public class RemotePackaging implements Callable<String, RuntimeException> {
     private File targetDir;
     private DeploymentPackage deploymentPackage;
     private BooterConfig booterConfig;
-    private Collection<Descriptor> descriptors;
+    private transient Collection<Descriptor> descriptors;
+    private byte[] encodedDescriptors;
+    private byte[] descriptorsSignature;
     private String registryVersion;
+    private PublicKey cacheVerificationKey;
     private Function0<MessageDigest> messageDigest;
     private static final Logger logger = LoggerFactory.getLogger(RemotePackaging.class);
 
+    // encoding and signing the type system is not free, builds against the same registry version reuse it
+    private static final Cache<String, SignedDescriptors> ENCODED_DESCRIPTORS = CacheBuilder.newBuilder().maximumSize(8).softValues().build();
+
+    // signs the descriptor files agents keep in their disk cache, the private key is only ever read on the controller
+    private static final DescriptorSigningKey DESCRIPTOR_SIGNING_KEY = new DescriptorSigningKey(RemotePackaging.class, "descriptorCacheSigning");
+
     public RemotePackaging forDeploymentPackage(DeploymentPackage deploymentPackage) {
         this.deploymentPackage = deploymentPackage;
         return this;
@@ -89,6 +104,46 @@ public class RemotePackaging implements Callable<String, RuntimeException> {
         return this;
     }
 
+    /**
+     * Runs the packaging on the given channel. The descriptors are only sent along when the agent does not already have
+     * this registry version in memory or in its disk cache.
+     */
+    public String callOn(VirtualChannel channel) throws IOException, InterruptedException {
+        this.cacheVerificationKey = DESCRIPTOR_SIGNING_KEY.getPublicKey();
+        if (channel.call(new RegistryProbe(booterConfig, registryVersion))) {
+            this.encodedDescriptors = null;
+            this.descriptorsSignature = null;
+            try {
+                return channel.call(this);
+            } catch (SlaveRemoteDescriptorRegistry.MissingDescriptorsException e) {
+                logger.info("Registry version {} no longer cached on agent, sending descriptors", registryVersion);
+            }
+        }
+        SignedDescriptors signed = encodeDescriptors();
+        this.encodedDescriptors = signed == null ? null : signed.encoded;
+        this.descriptorsSignature = signed == null ? null : signed.signature;
+        try {
+            return channel.call(this);
+        } finally {
+            this.encodedDescriptors = null;
+            this.descriptorsSignature = null;
+        }
+    }
+
+    private SignedDescriptors encodeDescriptors() {
+        if (descriptors == null) {
+            return null;
+        }
+        String cacheKey = booterConfig.getKey() + "@" + registryVersion;
+        SignedDescriptors signed = ENCODED_DESCRIPTORS.getIfPresent(cacheKey);
+        if (signed == null) {
+            byte[] encoded = DescriptorCodec.encodeDescriptors(descriptors);
+            signed = new SignedDescriptors(encoded, DESCRIPTOR_SIGNING_KEY.sign(booterConfig, registryVersion, encoded));
+            ENCODED_DESCRIPTORS.put(cacheKey, signed);
+        }
+        return signed;
+    }
+
     /**
      * Call to be executed via jenkins virtual channel
      */
@@ -97,22 +152,30 @@ public class RemotePackaging implements Callable<String, RuntimeException> {
         targetDir.mkdirs();
         ManifestWriter mw = new ManifestXmlWriter();
         DarPackager pkger = new DarPackager(mw);
-        DescriptorRegistry descriptorRegistry = DescriptorRegistry.getDescriptorRegistry(booterConfig);
-        if (null == descriptorRegistry) {
-           SlaveRemoteDescriptorRegistry.boot(descriptors, booterConfig, registryVersion);
-        } else {
-            if (descriptorRegistry instanceof Versioned) {
-                Versioned versionedDescriptorRegistry = (Versioned) descriptorRegistry;
-                if (!versionedDescriptorRegistry.getVersion().equals(this.registryVersion)) {
-                    SlaveRemoteDescriptorRegistry.boot(descriptors, booterConfig, registryVersion);
-                }
-            }
-            else {
-                // do nothing for normal remote descriptor registries - those should be reloaded from the UI
-            }
+        byte[] encoded = encodedDescriptors;
+        byte[] signature = descriptorsSignature;
+        if (encoded == null && descriptors != null) {
+            // packaging on the controller itself, this callable was not serialized
+            SignedDescriptors signed = encodeDescriptors();
+            encoded = signed.encoded;
+            signature = signed.signature;
+        }
+        // keeps the registry of our version active while packaging, other executors may use other versions
+        try (SlaveRemoteDescriptorRegistry.Lease ignored = SlaveRemoteDescriptorRegistry.lease(encoded, signature, booterConfig, registryVersion, cacheVerificationKey)) {
+            return pkger.buildPackage(deploymentPackage, targetDir.getAbsolutePath(), true).getPath();
+        }
+    }
+
+    private static class SignedDescriptors {
+        private final byte[] encoded;
+        private final byte[] signature;
+
+        SignedDescriptors(byte[] encoded, byte[] signature) {
+            this.encoded = encoded;
+            this.signature = signature;
         }
-        return pkger.buildPackage(deploymentPackage, targetDir.getAbsolutePath(), true).getPath();
     }
+
     /**
      * Old Call logic for packager - Once Deploy Fixes D-21539 , will update the call with below logic.
      */
@@ -1,7 +1,16 @@
 package com.xebialabs.deployit.ci.dar;
 
 import java.util.ArrayList;
+import java.security.PublicKey;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.xebialabs.deployit.booter.remote.BooterConfig;
 import com.xebialabs.deployit.booter.remote.RemoteDescriptorRegistry;
@@ -10,8 +19,19 @@ import com.xebialabs.deployit.plugin.api.reflect.Descriptor;
 import com.xebialabs.deployit.plugin.api.reflect.DescriptorRegistry;
 import com.xebialabs.deployit.plugin.api.reflect.DescriptorRegistryId;
 
+/**
+ * Descriptor registry booted on an agent from descriptors shipped by the controller.
+ * Registries of recently used versions are kept, so executors packaging for different controllers, credentials or
+ * registry versions switch the active registry instead of rebuilding it.
+ */
 public class SlaveRemoteDescriptorRegistry extends RemoteDescriptorRegistry implements Versioned {
 
+    private static final int MAX_CACHED_REGISTRIES = Math.max(1, Integer.getInteger(SlaveRemoteDescriptorRegistry.class.getName() + ".cacheSize", 4));
+
+    private static final RegistryCache<SlaveRemoteDescriptorRegistry> REGISTRIES = new RegistryCache<SlaveRemoteDescriptorRegistry>(MAX_CACHED_REGISTRIES);
+
+    private static final ConcurrentMap<String, ReentrantReadWriteLock> LOCKS = new ConcurrentHashMap<String, ReentrantReadWriteLock>();
+
     private String version;
 
     protected SlaveRemoteDescriptorRegistry(final DescriptorRegistryId id) {
@@ -23,14 +43,199 @@ public class SlaveRemoteDescriptorRegistry extends RemoteDescriptorRegistry impl
         this.version = registryVersion;
     }
 
-    public synchronized static void boot(Collection<Descriptor> descriptors, BooterConfig booterConfig, String registryVersion) {
-        SlaveRemoteDescriptorRegistry registry = new SlaveRemoteDescriptorRegistry(booterConfig, registryVersion);
+    public static void boot(Collection<Descriptor> descriptors, BooterConfig booterConfig, String registryVersion) {
+        Lock writeLock = lockFor(booterConfig).writeLock();
+        writeLock.lock();
+        try {
+            activate(descriptors, null, null, booterConfig, registryVersion, null);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Makes the registry of the given version the active one for the booter config and keeps it active until the
+     * returned lease is closed. Packaging with the same version runs concurrently; switching versions waits for the
+     * leases on the current one to be released.
+     *
+     * @param encodedDescriptors descriptors encoded by {@link DescriptorCodec}, or null to use the ones cached on this agent
+     * @param signature the controller's signature of the encoded descriptors, stored with them in the disk cache
+     * @param cacheVerificationKey the controller's public key to verify disk cache files with, or null to bypass the disk cache
+     */
+    public static Lease lease(byte[] encodedDescriptors, byte[] signature, BooterConfig booterConfig, String registryVersion, PublicKey cacheVerificationKey) {
+        String registryKey = registryKey(booterConfig, registryVersion);
+        ReentrantReadWriteLock lock = lockFor(booterConfig);
+        // taken before activating, so activating other versions never evicts the registry we are about to use
+        REGISTRIES.acquire(registryKey);
+        try {
+            lock.readLock().lock();
+            if (!isActive(booterConfig, registryVersion)) {
+                lock.readLock().unlock();
+                lock.writeLock().lock();
+                try {
+                    if (!isActive(booterConfig, registryVersion)) {
+                        activate(null, encodedDescriptors, signature, booterConfig, registryVersion, cacheVerificationKey);
+                    }
+                    // downgrade to a read lock so other packaging with this version can proceed
+                    lock.readLock().lock();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            REGISTRIES.release(registryKey);
+            throw e;
+        }
+        return new Lease(lock.readLock(), registryKey);
+    }
+
+    private static boolean isActive(BooterConfig booterConfig, String registryVersion) {
+        DescriptorRegistry descriptorRegistry = DescriptorRegistry.getDescriptorRegistry(booterConfig);
+        if (null == descriptorRegistry) {
+            return false;
+        }
+        if (descriptorRegistry instanceof Versioned) {
+            return ((Versioned) descriptorRegistry).getVersion().equals(registryVersion);
+        }
+        // normal remote descriptor registries (packaging on the controller) should be reloaded from the UI
+        return true;
+    }
+
+    private static void activate(Collection<Descriptor> descriptors, byte[] encodedDescriptors, byte[] signature, BooterConfig booterConfig, String registryVersion, PublicKey cacheVerificationKey) {
+        String registryKey = registryKey(booterConfig, registryVersion);
+        SlaveRemoteDescriptorRegistry registry = REGISTRIES.get(registryKey);
+        if (registry == null) {
+            if (null == descriptors) {
+                if (null == encodedDescriptors) {
+                    encodedDescriptors = DescriptorDiskCache.load(booterConfig, registryVersion, cacheVerificationKey);
+                    if (null == encodedDescriptors) {
+                        throw new MissingDescriptorsException(registryVersion);
+                    }
+                } else {
+                    DescriptorDiskCache.store(booterConfig, registryVersion, cacheVerificationKey, signature, encodedDescriptors);
+                }
+                descriptors = DescriptorCodec.decodeDescriptors(encodedDescriptors);
+            }
+            registry = new SlaveRemoteDescriptorRegistry(booterConfig, registryVersion);
+            registry.reboot(new ArrayList<Descriptor>(descriptors));
+            REGISTRIES.put(registryKey, registry);
+        }
         DescriptorRegistry.remove(booterConfig);
         DescriptorRegistry.add(registry);
-        registry.reboot(new ArrayList<Descriptor>(descriptors));
+    }
+
+    /**
+     * @return true when a registry of this version is active, cached in memory or stored in the disk cache, so the
+     * controller does not need to send the descriptors
+     */
+    public static boolean isAvailable(BooterConfig booterConfig, String registryVersion) {
+        if (isActive(booterConfig, registryVersion)) {
+            return true;
+        }
+        if (REGISTRIES.contains(registryKey(booterConfig, registryVersion))) {
+            return true;
+        }
+        return DescriptorDiskCache.contains(booterConfig, registryVersion);
+    }
+
+    private static String registryKey(BooterConfig booterConfig, String registryVersion) {
+        return booterConfig.getKey() + "@" + registryVersion;
+    }
+
+    private static ReentrantReadWriteLock lockFor(BooterConfig booterConfig) {
+        ReentrantReadWriteLock lock = LOCKS.get(booterConfig.getKey());
+        if (lock == null) {
+            ReentrantReadWriteLock created = new ReentrantReadWriteLock();
+            lock = LOCKS.putIfAbsent(booterConfig.getKey(), created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
     }
 
     public String getVersion() {
         return version;
     }
+
+    /**
+     * Thrown when packaging was requested without descriptors but the agent no longer has them, the caller should
+     * retry with the descriptors.
+     */
+    public static class MissingDescriptorsException extends RuntimeException {
+        public MissingDescriptorsException(String registryVersion) {
+            super("Descriptors of registry version " + registryVersion + " are not cached on this agent");
+        }
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Lock lock;
+        private final String registryKey;
+
+        private Lease(Lock lock, String registryKey) {
+            this.lock = lock;
+            this.registryKey = registryKey;
+        }
+
+        @Override
+        public void close() {
+            lock.unlock();
+            REGISTRIES.release(registryKey);
+        }
+    }
+
+    /**
+     * Registries in access order, evicting the least recently used ones beyond the maximum size. Registries with open
+     * leases are never evicted, the cache holds more than the maximum until they are released.
+     */
+    static class RegistryCache<V> {
+        private final int maxSize;
+        private final Map<String, V> entries = new LinkedHashMap<String, V>(16, 0.75f, true);
+        private final Map<String, Integer> leases = new HashMap<String, Integer>();
+
+        RegistryCache(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        synchronized V get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized boolean contains(String key) {
+            return entries.containsKey(key);
+        }
+
+        synchronized void put(String key, V value) {
+            entries.put(key, value);
+            evict();
+        }
+
+        /**
+         * Marks the entry as used and protects it from eviction until {@link #release(String)}, also when it is only
+         * put later.
+         */
+        synchronized void acquire(String key) {
+            entries.get(key);
+            Integer count = leases.get(key);
+            leases.put(key, count == null ? 1 : count + 1);
+        }
+
+        synchronized void release(String key) {
+            Integer count = leases.get(key);
+            if (count == null || count <= 1) {
+                leases.remove(key);
+                evict();
+            } else {
+                leases.put(key, count - 1);
+            }
+        }
+
+        private void evict() {
+            for (Iterator<String> it = entries.keySet().iterator(); entries.size() > maxSize && it.hasNext(); ) {
+                if (!leases.containsKey(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+    }
 }
@@ -24,8 +24,12 @@
 package com.xebialabs.deployit.ci.server;
 
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -34,6 +38,8 @@ import com.google.common.base.Throwables;
 import com.xebialabs.deployit.ci.DeployitPluginException;
 import com.xebialabs.deployit.ci.JenkinsDeploymentOptions;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
+import com.xebialabs.deployit.ci.util.PhaseTimer;
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
 import com.xebialabs.deployit.engine.api.DeploymentService;
 import com.xebialabs.deployit.engine.api.RepositoryService;
 import com.xebialabs.deployit.engine.api.TaskService;
@@ -66,7 +72,7 @@ public class DeployCommand {
         this.listener = listener;
     }
 
-    private void verifyPackageExistInRemoteRepository(String deploymentPackage) {
+    void verifyPackageExistInRemoteRepository(String deploymentPackage) {
         Type foundType;
         try {
             ConfigurationItem repoPackage = repositoryService.read(deploymentPackage);
@@ -87,32 +93,33 @@ public class DeployCommand {
     }
 
     public void deploy(String deploymentPackage, String environment) {
-        listener.debug(deploymentOptions.toString());
+        deploy(Collections.singletonList(deploymentPackage), environment);
+    }
 
-        verifyPackageExistInRemoteRepository(deploymentPackage);
-        boolean initialDeployment = !deploymentService.isDeployed(DeployitServerFactory.getParentId(deploymentPackage), environment);
+    /**
+     * Deploys several application versions to one environment with a single task. The first package drives the
+     * deployment, the others are attached to it as required deployments so XL Deploy validates and orchestrates them
+     * together, see {@link #addDeployments}.
+     */
+    public void deploy(List<String> deploymentPackages, String environment) {
+        listener.debug(deploymentOptions.toString());
 
+        PhaseTimer timer = listener.getTimer();
         Deployment deployment;
-        if (initialDeployment) {
-            listener.info("initial Deployment");
-            deployment = deploymentService.prepareInitial(deploymentPackage, environment);
-        } else {
-            listener.info("upgrade Deployment");
-            String deployedApplicationId = environment + "/" + DeployitServerFactory.getNameFromId(DeployitServerFactory.getParentId(deploymentPackage));
-            deployment = deploymentService.prepareUpdate(deploymentPackage, deployedApplicationId);
-        }
-
-        if (deploymentOptions.generateDeployedOnUpgrade) {
-            listener.debug("prepareAutoDeployeds");
-            deployment = deploymentService.prepareAutoDeployeds(deployment);
+        try (PhaseTimer.Split ignored = timer.start("deploy.prepare", environment)) {
+            deployment = prepare(deploymentPackages.get(0), environment);
+            if (deploymentPackages.size() > 1) {
+                addDeployments(deployment, deploymentPackages.subList(1, deploymentPackages.size()), environment);
+                listener.info(format("Deploying %d applications to %s in one task", deploymentPackages.size(), environment));
+            }
         }
 
         listener.debug(" dump Deployeds");
-        for (ConfigurationItem itemDto : deployment.getDeployeds()) {
+        for (ConfigurationItem itemDto : allDeployeds(deployment)) {
             listener.debug(" - " + itemDto);
         }
 
-        try {
+        try (PhaseTimer.Split ignored = timer.start("deploy.validate", environment)) {
             listener.debug("validate");
             deployment = deploymentService.validate(deployment);
         } catch (RuntimeException e) {
@@ -124,7 +131,7 @@ public class DeployCommand {
         }
 
         int validationMessagesFound = 0;
-        for (ConfigurationItem configurationItem : deployment.getDeployeds()) {
+        for (ConfigurationItem configurationItem : allDeployeds(deployment)) {
             if (!(configurationItem instanceof ValidatedConfigurationItem)) {
                 continue;
             }
@@ -141,16 +148,22 @@ public class DeployCommand {
 
         listener.debug("deploy");
 
-        String taskId = deploymentService.createTask(deployment);
+        String taskId;
+        try (PhaseTimer.Split ignored = timer.start("deploy.createTask", environment)) {
+            taskId = deploymentService.createTask(deployment);
+        }
 
-        try {
+        try (PhaseTimer.Split ignored = timer.start("deploy.execute", environment)) {
             executeTask(taskId);
         } catch (RuntimeException e) {
             try {
-                if (deploymentOptions.rollbackOnError) {
+                // an interrupted build stops polling, it does not start a rollback task it cannot wait for
+                if (deploymentOptions.rollbackOnError && !Thread.currentThread().isInterrupted()) {
                     // perform a rollback
                     listener.error("Deployment failed, performing a rollback");
-                    executeTask(deploymentService.rollback(taskId));
+                    try (PhaseTimer.Split ignored = timer.start("deploy.rollback", environment)) {
+                        executeTask(deploymentService.rollback(taskId));
+                    }
                 }
             } finally {
                 throw new DeployitPluginException(e.getMessage());
@@ -158,6 +171,118 @@ public class DeployCommand {
         }
     }
 
+    /**
+     * XL Deploy has no API to group independent deployments, so the other packages become required deployments of the
+     * first one, next to the dependencies XL Deploy resolved for it, and are deployed before it. Every application is
+     * deployed once: a package that is already part of the deployment as a dependency is not added again, and two
+     * different versions of one application are rejected.
+     */
+    private void addDeployments(Deployment deployment, List<String> deploymentPackages, String environment) {
+        Map<String, String> versionsByApplication = new LinkedHashMap<String, String>();
+        collectVersions(deployment, versionsByApplication);
+        for (String deploymentPackage : deploymentPackages) {
+            String application = DeployitServerFactory.getParentId(deploymentPackage);
+            String present = versionsByApplication.get(application);
+            if (present != null) {
+                checkSameVersion(deploymentPackage, present);
+                listener.info(format("%s is already part of the deployment", deploymentPackage));
+                continue;
+            }
+            Deployment additional = prepare(deploymentPackage, environment);
+            removeDeployed(additional, versionsByApplication);
+            collectVersions(additional, versionsByApplication);
+            List<Deployment> requiredDeployments = deployment.getRequiredDeployments();
+            if (requiredDeployments == null) {
+                requiredDeployments = newArrayList();
+                deployment.setRequiredDeployments(requiredDeployments);
+            }
+            requiredDeployments.add(additional);
+        }
+    }
+
+    /**
+     * Removes the dependencies of a deployment that are already deployed by another part of the task.
+     */
+    private void removeDeployed(Deployment deployment, Map<String, String> versionsByApplication) {
+        if (deployment.getRequiredDeployments() == null) {
+            return;
+        }
+        for (Iterator<Deployment> it = deployment.getRequiredDeployments().iterator(); it.hasNext(); ) {
+            Deployment requiredDeployment = it.next();
+            String version = versionOf(requiredDeployment);
+            String present = version == null ? null : versionsByApplication.get(DeployitServerFactory.getParentId(version));
+            if (present != null) {
+                checkSameVersion(version, present);
+                it.remove();
+            } else {
+                removeDeployed(requiredDeployment, versionsByApplication);
+            }
+        }
+    }
+
+    private void collectVersions(Deployment deployment, Map<String, String> versionsByApplication) {
+        String version = versionOf(deployment);
+        if (version != null) {
+            versionsByApplication.put(DeployitServerFactory.getParentId(version), version);
+        }
+        if (deployment.getRequiredDeployments() != null) {
+            for (Deployment requiredDeployment : deployment.getRequiredDeployments()) {
+                collectVersions(requiredDeployment, versionsByApplication);
+            }
+        }
+    }
+
+    private static void checkSameVersion(String deploymentPackage, String present) {
+        if (!present.equals(deploymentPackage)) {
+            throw new DeployitPluginException(format("Cannot deploy %s and %s in one task, they are versions of the same application", deploymentPackage, present));
+        }
+    }
+
+    private static String versionOf(Deployment deployment) {
+        ConfigurationItem deployedApplication = deployment.getDeployedApplication();
+        if (deployedApplication == null) {
+            return null;
+        }
+        ConfigurationItem version = deployedApplication.getProperty("version");
+        return version == null ? null : version.getId();
+    }
+
+    private Deployment prepare(String deploymentPackage, String environment) {
+        verifyPackageExistInRemoteRepository(deploymentPackage);
+        boolean initialDeployment = !deploymentService.isDeployed(DeployitServerFactory.getParentId(deploymentPackage), environment);
+
+        Deployment deployment;
+        if (initialDeployment) {
+            listener.info("initial Deployment");
+            deployment = deploymentService.prepareInitial(deploymentPackage, environment);
+        } else {
+            listener.info("upgrade Deployment");
+            String deployedApplicationId = environment + "/" + DeployitServerFactory.getNameFromId(DeployitServerFactory.getParentId(deploymentPackage));
+            deployment = deploymentService.prepareUpdate(deploymentPackage, deployedApplicationId);
+        }
+
+        if (deploymentOptions.generateDeployedOnUpgrade) {
+            listener.debug("prepareAutoDeployeds");
+            deployment = deploymentService.prepareAutoDeployeds(deployment);
+        }
+        return deployment;
+    }
+
+    private List<ConfigurationItem> allDeployeds(Deployment deployment) {
+        List<ConfigurationItem> deployeds = newArrayList();
+        collectDeployeds(deployment, deployeds);
+        return deployeds;
+    }
+
+    private void collectDeployeds(Deployment deployment, List<ConfigurationItem> deployeds) {
+        deployeds.addAll(deployment.getDeployeds());
+        if (deployment.getRequiredDeployments() != null) {
+            for (Deployment requiredDeployment : deployment.getRequiredDeployments()) {
+                collectDeployeds(requiredDeployment, deployeds);
+            }
+        }
+    }
+
     private boolean executeTask(String taskId) {
 
         if (deploymentOptions.skipMode) {
@@ -242,6 +367,15 @@ public class DeployCommand {
 
     private void startTaskAndWait(String taskId) {
         taskService.start(taskId);
+        XLDeployMetrics.getInstance().gauge(XLDeployMetrics.ACTIVE_POLLS, 1);
+        try {
+            waitForTask(taskId);
+        } finally {
+            XLDeployMetrics.getInstance().gauge(XLDeployMetrics.ACTIVE_POLLS, -1);
+        }
+    }
+
+    private void waitForTask(String taskId) {
         // Wait until done/failed
         boolean done = false;
         TaskState ti;
@@ -269,6 +403,7 @@ public class DeployCommand {
                 Thread.sleep(1000);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
+                throw new DeployitPluginException(format("Interrupted while waiting for task %s", taskId), e);
             }
         }
     }
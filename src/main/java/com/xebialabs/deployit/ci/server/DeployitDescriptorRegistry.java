@@ -48,5 +48,21 @@ public interface DeployitDescriptorRegistry extends Versioned {
 
     void reload();
 
+    /**
+     * Reloads the type system only when the server version, plugins or classpath changed since the last check. The
+     * first check records them without reloading.
+     * Checks made shortly after each other (e.g. by parallel builds) are answered from the previous check.
+     *
+     * @return true when the types were reloaded
+     */
+    boolean reloadIfTypesChanged();
+
+    /**
+     * Applies a new connection pool size and socket timeout to the communicator without re-booting it.
+     *
+     * @return false when the running http client cannot be reconfigured and the registry should be recreated instead
+     */
+    boolean applyConnectionSettings(int connectionPoolSize, int socketTimeout);
+
     public DeployitCommunicator getCommunicator();
 }
@@ -23,46 +23,74 @@
 
 package com.xebialabs.deployit.ci.server;
 
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
-import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Ordering;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Monitor;
 import com.xebialabs.deployit.booter.remote.*;
 import com.xebialabs.deployit.ci.ArtifactView;
 import com.xebialabs.deployit.ci.DeployitPluginException;
+import com.xebialabs.deployit.ci.dar.DescriptorCodec;
 import com.xebialabs.deployit.ci.util.PluginLogger;
-import com.xebialabs.deployit.ci.util.Strings2;
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
+import com.xebialabs.deployit.engine.api.dto.ServerInfo;
+import com.xebialabs.deployit.engine.api.dto.ServerPluginInfo;
 import com.xebialabs.deployit.plugin.api.reflect.*;
 import com.xebialabs.deployit.plugin.api.udm.*;
 import com.xebialabs.deployit.plugin.api.udm.artifact.FolderArtifact;
 import com.xebialabs.deployit.plugin.api.udm.artifact.SourceArtifact;
 import com.xebialabs.deployit.plugin.api.udm.base.*;
 
-import javax.annotation.Nullable;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newHashMap;
 import static com.google.common.collect.Sets.newHashSet;
-import static com.google.common.collect.Sets.newLinkedHashSet;
 
 public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistry {
-    private final BooterConfig booterConfig;
+    private BooterConfig booterConfig;
     public final PluginLogger pluginLogger = PluginLogger.getInstance();
 
+    private static final long TYPES_CHECK_INTERVAL_MILLIS = Long.getLong(DeployitDescriptorRegistryImpl.class.getName() + ".typesCheckIntervalMillis", 30000L);
     private final Monitor LOCK = new Monitor();
     private Iterable<Descriptor> allDeployableDescriptors;
-
-    private DeployitCommunicator communicator;
-    private String version;
+    private static final PropertySetter NO_PROPERTY = new PropertySetter(null);
+    // replaced as a whole on reload, a lookup still running against the old descriptors fills the discarded caches
+    private volatile TypeCaches typeCaches = new TypeCaches();
+
+    private volatile DeployitCommunicator communicator;
+    // pool size and socket timeout given while the communicator was being created, {poolSize, socketTimeout}
+    private volatile int[] pendingConnectionSettings;
+    private volatile String version;
+    private volatile String typesFingerprint;
+    private volatile long lastTypesCheck;
+    long typesCheckIntervalMillis = TYPES_CHECK_INTERVAL_MILLIS;
 
     DeployitDescriptorRegistryImpl(BooterConfig booterConfig) {
         this.booterConfig = booterConfig;
-        this.version = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Registry using a communicator that is already booted.
+     */
+    DeployitDescriptorRegistryImpl(BooterConfig booterConfig, DeployitCommunicator communicator) {
+        this.booterConfig = booterConfig;
+        this.communicator = communicator;
     }
 
     @Override
@@ -79,12 +107,19 @@ public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistr
                     communicator = RemoteBooter.boot(booterConfig);
                 }
                 fixVersionDepl6949();
+                version = contentVersion(getDescriptors());
             }
         } finally {
             LOCK.leave();
         }
 
-        return communicator;
+        DeployitCommunicator result = communicator;
+        int[] pending = pendingConnectionSettings;
+        if (pending != null && result != null) {
+            pendingConnectionSettings = null;
+            applyToHttpClient(result, pending[0], pending[1]);
+        }
+        return result;
     }
 
     private String safeBooterConfigKey() {
@@ -197,51 +232,57 @@ public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistr
 
     private ConfigurationItem newInstance(Type type, String id) {
         try {
-            RemoteDescriptor remoteDescriptor = (RemoteDescriptor) getDescriptor(type);
-            // T ci = remoteDescriptor.newInstance(id);
-            BaseConfigurationItem ci;
-
-            if (remoteDescriptor.isAssignableTo(typeForClass(EmbeddedDeployable.class))) {
-                ci = new BaseEmbeddedDeployable();
-            } else if (remoteDescriptor.isAssignableTo(typeForClass(SourceArtifact.class))) {
-                if (remoteDescriptor.isAssignableTo(typeForClass(FolderArtifact.class))) {
-                    ci = new BaseDeployableFolderArtifact();
-                } else {
-                    ci = new BaseDeployableFileArtifact();
-                }
-            } else if (remoteDescriptor.isAssignableTo(typeForClass(Deployable.class))) {
-                ci = new BaseDeployable();
+            return getCiTemplate(type).newInstance(type, id);
+        } catch (Throwable e) {
+            String errorMsg = String.format("Unable to instantiate CI '%s' with id '%s'. %s", type, id, e.getMessage());
+            throw new RuntimeException(errorMsg, e);
+        }
+    }
+
+    private CiTemplate getCiTemplate(Type type) {
+        TypeCaches caches = typeCaches;
+        CiTemplate template = caches.ciTemplates.get(type.toString());
+        if (template == null) {
+            template = createCiTemplate(type);
+            caches.ciTemplates.put(type.toString(), template);
+        }
+        return template;
+    }
+
+    private CiTemplate createCiTemplate(Type type) {
+        RemoteDescriptor remoteDescriptor = (RemoteDescriptor) getDescriptor(type);
+        Class<? extends BaseConfigurationItem> ciClass;
+        if (remoteDescriptor.isAssignableTo(typeForClass(EmbeddedDeployable.class))) {
+            ciClass = BaseEmbeddedDeployable.class;
+        } else if (remoteDescriptor.isAssignableTo(typeForClass(SourceArtifact.class))) {
+            if (remoteDescriptor.isAssignableTo(typeForClass(FolderArtifact.class))) {
+                ciClass = BaseDeployableFolderArtifact.class;
             } else {
-                ci = new BaseConfigurationItem();
+                ciClass = BaseDeployableFileArtifact.class;
             }
-            ci.setId(id);
-            ci.setType(type);
+        } else if (remoteDescriptor.isAssignableTo(typeForClass(Deployable.class))) {
+            ciClass = BaseDeployable.class;
+        } else {
+            ciClass = BaseConfigurationItem.class;
+        }
 
-            for (PropertyDescriptor pd : remoteDescriptor.getPropertyDescriptors()) {
-                if (pd.isAsContainment()) {
-                    String propertyName = pd.getName();
-                    if (null == ci.getProperty(propertyName)) {
-                        switch (pd.getKind()) {
-                            case LIST_OF_CI:
-                                ci.setProperty(propertyName, newArrayList());
-                                break;
-                            case SET_OF_CI:
-                                ci.setProperty(propertyName, newHashSet());
-                                break;
-                            default:
-                                break;
-                        }
-                    }
-                }
+        CiTemplate template = new CiTemplate(ciClass);
+        for (PropertyDescriptor pd : remoteDescriptor.getPropertyDescriptors()) {
+            if (pd.isAsContainment() && (pd.getKind() == PropertyKind.LIST_OF_CI || pd.getKind() == PropertyKind.SET_OF_CI)) {
+                template.containments.put(pd.getName(), pd.getKind());
             }
-
-            initSyntheticProperties(ci, type);
-
-            return ci;
-        } catch (Throwable e) {
-            String errorMsg = String.format("Unable to instantiate CI '%s' with id '%s'. %s", type, id, e.getMessage());
-            throw new RuntimeException(errorMsg, e);
         }
+        for (PropertyDescriptor pd : type.getDescriptor().getPropertyDescriptors()) {
+            Object defaultValue = pd.getDefaultValue();
+            // hack for boolean
+            if (defaultValue == null && PropertyKind.BOOLEAN == pd.getKind()) {
+                defaultValue = false;
+            }
+            if (defaultValue != null) {
+                template.defaultValues.put(pd.getName(), defaultValue);
+            }
+        }
+        return template;
     }
 
     @Override
@@ -260,67 +301,33 @@ public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistr
 
     @Override
     public void setProperty(ConfigurationItem ci, String propName, String value) {
-        PropertyDescriptor pd = getDescriptor(ci.getType()).getPropertyDescriptor(propName);
-        if (pd == null) {
+        PropertySetter setter = getPropertySetter(ci.getType(), propName);
+        if (setter == NO_PROPERTY) {
             pluginLogger.debug("Property descriptor for requested type {} has not been found.", ci.getType());
             pluginLogger.debug("Skipping setting into property = {} value = {}", propName, value);
         } else {
-            pd.set(ci, convertValue(value, pd));
+            setter.set(ci, value);
         }
     }
 
-    private Object convertValue(String val, PropertyDescriptor pd) {
-        if (val == null) {
-            return null;
-        }
-        switch (pd.getKind()) {
-            case BOOLEAN:
-                return Boolean.parseBoolean(val);
-            case INTEGER:
-                if (val.isEmpty()) {
-                    return null;
-                }
-                return Integer.parseInt(val);
-            case CI:
-                return convertToCiRef(val, pd);
-            case SET_OF_STRING:
-                return newLinkedHashSet(splitValue(val));
-            case LIST_OF_STRING:
-                return newArrayList(splitValue(val));
-            case SET_OF_CI:
-                return newLinkedHashSet(convertToCiRefs(val, pd));
-            case LIST_OF_CI:
-                return newArrayList(convertToCiRefs(val, pd));
-            case MAP_STRING_STRING:
-                return Strings2.convertToMap(val);
-            default:
-                return val;
-        }
-    }
-
-    private Iterable<ConfigurationItem> convertToCiRefs(String val, final PropertyDescriptor pd) {
-        return FluentIterable.from(splitValue(val)).transform(new Function<String, ConfigurationItem>() {
-            @Nullable
-            @Override
-            public ConfigurationItem apply(@Nullable final String input) {
-                return convertToCiRef(input, pd);
+    private PropertySetter getPropertySetter(Type type, String propName) {
+        TypeCaches caches = typeCaches;
+        String typeName = type.toString();
+        ConcurrentMap<String, PropertySetter> setters = caches.propertySetters.get(typeName);
+        if (setters == null) {
+            ConcurrentMap<String, PropertySetter> created = new ConcurrentHashMap<String, PropertySetter>();
+            setters = caches.propertySetters.putIfAbsent(typeName, created);
+            if (setters == null) {
+                setters = created;
             }
-        });
-    }
-
-    private ConfigurationItem convertToCiRef(String name, PropertyDescriptor pd) {
-        BaseConfigurationItem ci = new BaseConfigurationItem();
-        ci.setId(name);
-        ci.setType(pd.getReferencedType());
-        return ci;
-    }
-
-
-    private Iterable<String> splitValue(String val) {
-	if (val.contains(";")) {
-	    return Splitter.on(';').trimResults().omitEmptyStrings().split(val);
-	}
-        return Splitter.on('\n').trimResults().omitEmptyStrings().split(val);
+        }
+        PropertySetter setter = setters.get(propName);
+        if (setter == null) {
+            PropertyDescriptor pd = getDescriptor(type).getPropertyDescriptor(propName);
+            setter = pd == null ? NO_PROPERTY : new PropertySetter(pd);
+            setters.put(propName, setter);
+        }
+        return setter;
     }
 
     private Iterable<Descriptor> getAllDeployableDescriptors() {
@@ -389,19 +396,75 @@ public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistr
 
     @Override
     public void addEmbedded(ConfigurationItem parent, ConfigurationItem embed) {
-        com.xebialabs.deployit.plugin.api.reflect.Descriptor descriptor = getDescriptor(parent.getType().toString());
-        for (PropertyDescriptor pd : descriptor.getPropertyDescriptors()) {
-            if (isMatchingEmbeddedProperty(pd, embed.getType())) {
-                Collection col = (Collection) pd.get(parent);
-                if (col == null) {
-                    col = pd.getKind() == PropertyKind.LIST_OF_CI ? newArrayList() : newHashSet();
-                    pd.set(parent, col);
+        PropertyDescriptor pd = getContainmentProperties(parent.getType().toString()).get(embed.getType().toString());
+        if (pd == null) {
+            throw new RuntimeException("Failed to find property that embeds " + embed + " into parent " + parent);
+        }
+        Collection col = (Collection) pd.get(parent);
+        if (col == null) {
+            col = pd.getKind() == PropertyKind.LIST_OF_CI ? newArrayList() : newHashSet();
+            pd.set(parent, col);
+        }
+        col.add(embed);
+    }
+
+    /**
+     * @return the containment property of the parent type per embedded type name, the first one declared wins
+     */
+    private Map<String, PropertyDescriptor> getContainmentProperties(String parentType) {
+        TypeCaches caches = typeCaches;
+        Map<String, PropertyDescriptor> properties = caches.containmentProperties.get(parentType);
+        if (properties == null) {
+            properties = newHashMap();
+            for (PropertyDescriptor pd : getDescriptor(parentType).getPropertyDescriptors()) {
+                if (isContainmentCollection(pd) && !properties.containsKey(pd.getReferencedType().toString())) {
+                    properties.put(pd.getReferencedType().toString(), pd);
                 }
-                col.add(embed);
-                return;
             }
+            caches.containmentProperties.put(parentType, properties);
+        }
+        return properties;
+    }
+
+    @Override
+    public boolean applyConnectionSettings(int connectionPoolSize, int socketTimeout) {
+        DeployitCommunicator current = communicator;
+        if (current != null) {
+            return applyToHttpClient(current, connectionPoolSize, socketTimeout);
+        }
+        if (!LOCK.tryEnter()) {
+            // the communicator is being booted, which can take long; it picks the settings up on its next use
+            pendingConnectionSettings = new int[]{connectionPoolSize, socketTimeout};
+            return true;
+        }
+        try {
+            if (null == communicator) {
+                // not booted yet, the new values are picked up when it is
+                booterConfig = BooterConfig.builder(booterConfig)
+                        .withConnectionPoolSize(connectionPoolSize)
+                        .withSocketTimeout(socketTimeout)
+                        .build();
+                return true;
+            }
+            return applyToHttpClient(communicator, connectionPoolSize, socketTimeout);
+        } finally {
+            LOCK.leave();
         }
-        throw new RuntimeException("Failed to find property that embeds " + embed + " into parent " + parent);
+    }
+
+    private boolean applyToHttpClient(DeployitCommunicator communicator, int connectionPoolSize, int socketTimeout) {
+        HttpClient httpClient = communicator.getHttpClient();
+        ClientConnectionManager connectionManager = httpClient.getConnectionManager();
+        if (!(connectionManager instanceof PoolingClientConnectionManager)) {
+            pluginLogger.warn("Cannot apply connection pool size {} to config: {}.", connectionPoolSize, safeBooterConfigKey());
+            return false;
+        }
+        PoolingClientConnectionManager pool = (PoolingClientConnectionManager) connectionManager;
+        pool.setMaxTotal(connectionPoolSize);
+        pool.setDefaultMaxPerRoute(connectionPoolSize);
+        HttpConnectionParams.setSoTimeout(httpClient.getParams(), socketTimeout);
+        pluginLogger.info("Applied connection pool size {} and socket timeout {} to config: {}.", connectionPoolSize, socketTimeout, safeBooterConfigKey());
+        return true;
     }
 
     @Override
@@ -409,17 +472,88 @@ public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistr
         LOCK.enter();
         try {
             pluginLogger.warn("About to reload descriptor registry for config: {}.", safeBooterConfigKey());
-            version = UUID.randomUUID().toString();
+            XLDeployMetrics.getInstance().increment(XLDeployMetrics.REGISTRY_RELOADS, "server", booterConfig.getUrl());
+            version = null;
             getDescriptorRegistry().reboot(getCommunicator());
+            version = contentVersion(getDescriptors());
             allDeployableDescriptors = null;
+            typeCaches = new TypeCaches();
+        } finally {
+            LOCK.leave();
+        }
+    }
+
+    @Override
+    public boolean reloadIfTypesChanged() {
+        if (typesFingerprint != null && System.currentTimeMillis() - lastTypesCheck < typesCheckIntervalMillis) {
+            return false;
+        }
+        // asked outside the lock, a slow server must not hold up lookups and packaging meanwhile
+        String fingerprint = typesFingerprint(getCommunicator().getProxies().getServerService().getInfo());
+        boolean changed;
+        LOCK.enter();
+        try {
+            lastTypesCheck = System.currentTimeMillis();
+            // the first fingerprint is taken of the types loaded at boot, there is nothing to compare it with
+            changed = typesFingerprint != null && !fingerprint.equals(typesFingerprint);
+            typesFingerprint = fingerprint;
         } finally {
             LOCK.leave();
         }
+        if (changed) {
+            reload();
+        } else {
+            pluginLogger.debug("Type system unchanged for config: {}.", safeBooterConfigKey());
+        }
+        return changed;
+    }
+
+    /**
+     * Types only change with the server version, its plugins or its classpath (extensions and synthetic.xml).
+     */
+    private static String typesFingerprint(ServerInfo serverInfo) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        putField(hasher, serverInfo.getVersion());
+        if (serverInfo.getPluginsInfo() != null) {
+            for (ServerPluginInfo plugin : serverInfo.getPluginsInfo()) {
+                putField(hasher, plugin.getName() + ":" + plugin.getVersion());
+            }
+        }
+        if (serverInfo.getClasspathEntries() != null) {
+            for (String entry : serverInfo.getClasspathEntries()) {
+                putField(hasher, entry);
+            }
+        }
+        return hasher.hash().toString();
     }
 
+    /**
+     * The version is a digest of the loaded types, computed when they are (re)loaded, so it only changes when the type
+     * system does. Agents key their registry caches on it.
+     */
     @Override
     public String getVersion() {
-        return version;
+        String result = version;
+        if (null == result) {
+            // booting computes it, a reload in progress sets it when done
+            getCommunicator();
+            result = version;
+        }
+        return result;
+    }
+
+    /**
+     * Digest of every serialized field of the descriptors, in the encoding that is shipped to agents, so any change an
+     * agent could observe yields a new version.
+     */
+    static String contentVersion(Collection<Descriptor> descriptors) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putBytes(DescriptorCodec.encodeDescriptors(Ordering.natural().onResultOf(DESCRIPTOR_TO_TYPE_NAME).sortedCopy(descriptors)));
+        return hasher.hash().toString();
+    }
+
+    private static void putField(Hasher hasher, Object value) {
+        hasher.putString(String.valueOf(value), Charsets.UTF_8).putChar('\0');
     }
 
     private boolean isEmbeddedProperty(PropertyDescriptor pd, Type embeddedDeployableType) {
@@ -427,9 +561,8 @@ public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistr
                 pd.getReferencedType().isSubTypeOf(embeddedDeployableType);
     }
 
-    private boolean isMatchingEmbeddedProperty(PropertyDescriptor pd, Type matchType) {
-        return pd.isAsContainment() && (pd.getKind() == PropertyKind.LIST_OF_CI || pd.getKind() == PropertyKind.SET_OF_CI) &&
-                pd.getReferencedType().equals(matchType);
+    private boolean isContainmentCollection(PropertyDescriptor pd) {
+        return pd.isAsContainment() && (pd.getKind() == PropertyKind.LIST_OF_CI || pd.getKind() == PropertyKind.SET_OF_CI);
     }
 
     private static final Function<Descriptor, String> DESCRIPTOR_TO_TYPE_NAME = new Function<Descriptor, String>() {
@@ -459,4 +592,61 @@ public class DeployitDescriptorRegistryImpl implements DeployitDescriptorRegistr
             return input.isAssignableTo(type);
         }
     }
+
+    /**
+     * What is looked up per type, valid for one registry load. Lookups read the caches before the descriptors, so
+     * after a reload only lookups against the new descriptors can fill the new caches.
+     */
+    private static final class TypeCaches {
+        private final ConcurrentMap<String, Map<String, PropertyDescriptor>> containmentProperties = new ConcurrentHashMap<String, Map<String, PropertyDescriptor>>();
+        private final ConcurrentMap<String, CiTemplate> ciTemplates = new ConcurrentHashMap<String, CiTemplate>();
+        private final ConcurrentMap<String, ConcurrentMap<String, PropertySetter>> propertySetters = new ConcurrentHashMap<String, ConcurrentMap<String, PropertySetter>>();
+    }
+
+    /**
+     * Setter for one property of a type, with the converter of its kind, looked up once per registry load instead of
+     * on every call.
+     */
+    private static class PropertySetter {
+        private final PropertyDescriptor pd;
+        private final PropertyValueConverter converter;
+
+        PropertySetter(PropertyDescriptor pd) {
+            this.pd = pd;
+            this.converter = pd == null ? null : PropertyValueConverter.forKind(pd.getKind());
+        }
+
+        void set(ConfigurationItem ci, String value) {
+            pd.set(ci, value == null ? null : converter.convert(value, pd));
+        }
+    }
+
+    /**
+     * What a new CI of a type looks like: its base class, empty containment collections and default values.
+     * Built once per type and registry load.
+     */
+    static class CiTemplate {
+        private final Class<? extends BaseConfigurationItem> ciClass;
+        final Map<String, PropertyKind> containments = new LinkedHashMap<String, PropertyKind>();
+        final Map<String, Object> defaultValues = new LinkedHashMap<String, Object>();
+
+        CiTemplate(Class<? extends BaseConfigurationItem> ciClass) {
+            this.ciClass = ciClass;
+        }
+
+        ConfigurationItem newInstance(Type type, String id) throws InstantiationException, IllegalAccessException {
+            BaseConfigurationItem ci = ciClass.newInstance();
+            ci.setId(id);
+            ci.setType(type);
+            for (Map.Entry<String, PropertyKind> containment : containments.entrySet()) {
+                if (null == ci.getProperty(containment.getKey())) {
+                    ci.setProperty(containment.getKey(), containment.getValue() == PropertyKind.LIST_OF_CI ? newArrayList() : newHashSet());
+                }
+            }
+            for (Map.Entry<String, Object> defaultValue : defaultValues.entrySet()) {
+                ci.setProperty(defaultValue.getKey(), defaultValue.getValue());
+            }
+            return ci;
+        }
+    }
 }
@@ -13,19 +13,55 @@ public interface DeployitServer {
 
     public static final int DEFAULT_POOL_SIZE = 25;
     public static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+    public static final int DEFAULT_UPLOAD_POOL_SIZE = 4;
+    public static final int DEFAULT_UPLOAD_SOCKET_TIMEOUT = 600000;
 
     void setConnectionPoolSize(int poolSize);
 
     void setSocketTimeout(int poolSize);
 
+    /**
+     * Resizes the connection pool and changes the socket timeout of a running server in place.
+     *
+     * @return false when the settings could not be applied and the server should be recreated
+     */
+    boolean applyConnectionSettings(int connectionPoolSize, int socketTimeout);
+
+    /**
+     * Configures the separate connection pool used to upload packages, so uploads do not compete with task polling.
+     */
+    void applyUploadSettings(int uploadPoolSize, int uploadSocketTimeout);
+
+    /**
+     * Limits concurrent uploads and upload throughput, in KB per second, for the XL Deploy server as a whole and for
+     * this server's credential. Zero means unlimited.
+     */
+    void applyUploadLimits(int serverMaxConcurrentUploads, int serverKilobytesPerSecond, int maxConcurrentUploads, int kilobytesPerSecond);
+
     List<String> search(String type);
 
     List<String> search(String type, String namePattern);
 
     ConfigurationItem importPackage(String darFile);
 
+    /**
+     * Imports the package, reporting time spent waiting for upload limits to the listener.
+     */
+    ConfigurationItem importPackage(String darFile, JenkinsDeploymentListener listener);
+
     void deploy(String deploymentPackage, String environment,  JenkinsDeploymentOptions deploymentOptions, JenkinsDeploymentListener listener);
 
+    /**
+     * Deploys several application versions to one environment as a single XL Deploy task.
+     */
+    void deploy(List<String> deploymentPackages, String environment, JenkinsDeploymentOptions deploymentOptions, JenkinsDeploymentListener listener);
+
+    /**
+     * Deploys the given packages to several environments, running at most {@code maxConcurrentDeployments} deployments
+     * at a time. Every environment is attempted; failures are reported in the returned results rather than thrown.
+     */
+    List<DeploymentResult> deploy(List<String> deploymentPackages, List<String> environments, int maxConcurrentDeployments, JenkinsDeploymentOptions deploymentOptions, JenkinsDeploymentListener listener);
+
     DeployitCommunicator newCommunicator();
 
     DeployitDescriptorRegistry getDescriptorRegistry();
@@ -34,7 +70,18 @@ public interface DeployitServer {
 
     void reload();
 
+    /**
+     * @see DeployitDescriptorRegistry#reloadIfTypesChanged()
+     */
+    boolean reloadIfTypesChanged();
+
     ServerInfo getServerInfo();
 
+    /**
+     * Releases the connections owned by this server once no longer needed, e.g. when it is evicted from the cache.
+     * Calls in progress are completed first.
+     */
+    void close();
+
     String getRegistryVersion();
 }
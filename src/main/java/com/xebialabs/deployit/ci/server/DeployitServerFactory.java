@@ -3,6 +3,7 @@ package com.xebialabs.deployit.ci.server;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.Collection;
 import java.util.List;
 
 import com.google.common.base.Joiner;
@@ -23,12 +24,31 @@ public class DeployitServerFactory {
     }
 
     public static DeployitServer newInstance(String serverUrl, String proxyUrl, String username, String password, int connectionPoolSize, int socketTimeout) {
-        return newInstance(getBooterConfig(serverUrl, proxyUrl, username, password, connectionPoolSize, socketTimeout));
+        return newInstance(serverUrl, proxyUrl, username, password, connectionPoolSize, socketTimeout, false);
+    }
+
+    /**
+     * @param pat whether the password is a personal access token
+     */
+    public static DeployitServer newInstance(String serverUrl, String proxyUrl, String username, String password, int connectionPoolSize, int socketTimeout, boolean pat) {
+        return newInstance(getBooterConfig(serverUrl, proxyUrl, username, password, connectionPoolSize, socketTimeout), pat);
     }
 
     public static DeployitServer newInstance(BooterConfig booterConfig) {
-        DeployitServer server = new DeployitServerImpl(booterConfig);
-        return Reflection.newProxy(DeployitServer.class, new PluginFirstClassloaderInvocationHandler(server));
+        return newInstance(booterConfig, false);
+    }
+
+    public static DeployitServer newInstance(BooterConfig booterConfig, boolean pat) {
+        DeployitServer server = new DeployitServerImpl(booterConfig, pat);
+        return Reflection.newProxy(DeployitServer.class, new PluginFirstClassloaderInvocationHandler(server, booterConfig.getUrl()));
+    }
+
+    /**
+     * Forgets the upload limits of servers other than the given ones, e.g. after servers were removed from the
+     * configuration.
+     */
+    public static void retainUploadThrottles(Collection<String> serverUrls) {
+        UploadThrottle.retainServers(serverUrls);
     }
 
     public static BooterConfig getBooterConfig(String serverUrl, String proxyUrl, String username, String password, int connectionPoolSize, int socketTimeout) {
@@ -1,48 +1,65 @@
 package com.xebialabs.deployit.ci.server;
 
+import java.io.File;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Lists;
+import com.google.common.base.Joiner;
 import com.google.common.reflect.Reflection;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.xebialabs.deployit.booter.remote.BooterConfig;
 import com.xebialabs.deployit.booter.remote.DeployitCommunicator;
 import com.xebialabs.deployit.booter.remote.client.DeployitRemoteClient;
+import com.xebialabs.deployit.ci.DeployitPluginException;
 import com.xebialabs.deployit.ci.JenkinsDeploymentOptions;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
 import com.xebialabs.deployit.engine.api.DeploymentService;
 import com.xebialabs.deployit.engine.api.RepositoryService;
 import com.xebialabs.deployit.engine.api.TaskService;
 import com.xebialabs.deployit.engine.api.dto.ConfigurationItemId;
 import com.xebialabs.deployit.engine.api.dto.ServerInfo;
+import com.xebialabs.deployit.plugin.api.reflect.Type;
 import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newLinkedHashSet;
 import static java.lang.String.format;
 
 public class DeployitServerImpl implements DeployitServer {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DeployitServerImpl.class);
-    private BooterConfig booterConfig;
+    /** Number of ids fetched per repository query, so a large repository is not returned in a single response. */
+    static final int SEARCH_PAGE_SIZE = Math.max(1, Integer.getInteger(DeployitServerImpl.class.getName() + ".searchPageSize", 500));
+    private volatile BooterConfig booterConfig;
     private DeployitDescriptorRegistry descriptorRegistry;
     private int poolSize;
     private int socketTimeout;
+    private final PackageUploader packageUploader;
 
-    DeployitServerImpl(BooterConfig booterConfig) {
+    DeployitServerImpl(BooterConfig booterConfig, boolean pat) {
         this.booterConfig = booterConfig;
         this.poolSize=booterConfig.getConnectionPoolSize();
         this.socketTimeout=booterConfig.getSocketTimeout();
+        this.packageUploader = new PackageUploader(booterConfig, pat);
         BooterConfig newBooterConfig = BooterConfig.builder(booterConfig)
             .withConnectionPoolSize(poolSize)
-            .withHttpRequestInterceptor(new PreemptiveAuthenticationInterceptor())
+            .withHttpRequestInterceptor(new PreemptiveAuthenticationInterceptor(pat))
             .withSocketTimeout(socketTimeout)
             .build();
         this.descriptorRegistry = Reflection.newProxy(DeployitDescriptorRegistry.class,
-                new PluginFirstClassloaderInvocationHandler(new DeployitDescriptorRegistryImpl(newBooterConfig)));
+                new PluginFirstClassloaderInvocationHandler(new DeployitDescriptorRegistryImpl(newBooterConfig), booterConfig.getUrl()));
     }
 
     private DeployitCommunicator getCommunicator() {
@@ -51,12 +68,40 @@ public class DeployitServerImpl implements DeployitServer {
 
     @Override
     public void setConnectionPoolSize(final int poolSize) {
-        this.poolSize = poolSize;
+        applyConnectionSettings(poolSize, socketTimeout);
     }
 
     @Override
     public void setSocketTimeout(final int socketTimeout) {
-        this.socketTimeout = socketTimeout;
+        applyConnectionSettings(poolSize, socketTimeout);
+    }
+
+    @Override
+    public synchronized boolean applyConnectionSettings(int connectionPoolSize, int socketTimeout) {
+        if (this.poolSize == connectionPoolSize && this.socketTimeout == socketTimeout) {
+            return true;
+        }
+        boolean applied = getDescriptorRegistry().applyConnectionSettings(connectionPoolSize, socketTimeout);
+        if (applied) {
+            this.poolSize = connectionPoolSize;
+            this.socketTimeout = socketTimeout;
+            // keep the configuration handed out to packaging and actions in line with the running client
+            this.booterConfig = BooterConfig.builder(booterConfig)
+                    .withConnectionPoolSize(connectionPoolSize)
+                    .withSocketTimeout(socketTimeout)
+                    .build();
+        }
+        return applied;
+    }
+
+    @Override
+    public void applyUploadSettings(int uploadPoolSize, int uploadSocketTimeout) {
+        packageUploader.configure(uploadPoolSize, uploadSocketTimeout);
+    }
+
+    @Override
+    public void applyUploadLimits(int serverMaxConcurrentUploads, int serverKilobytesPerSecond, int maxConcurrentUploads, int kilobytesPerSecond) {
+        packageUploader.configureLimits(serverMaxConcurrentUploads, serverKilobytesPerSecond, maxConcurrentUploads, kilobytesPerSecond);
     }
 
     @Override
@@ -64,18 +109,29 @@ public class DeployitServerImpl implements DeployitServer {
         return search(type, null);
     }
 
+    /**
+     * Queries the repository page by page. Each page is still unmarshalled as a whole by the typed resteasy proxy,
+     * paging only bounds the size of a single response; the ids of all pages are collected in memory.
+     */
     @Override
     public List<String> search(String type, String namePattern) {
         LOGGER.debug("search " + type);
         try {
-
-            List<ConfigurationItemId> result = getCommunicator().getProxies().getRepositoryService().query(getDescriptorRegistry().typeForName(type), null, null, namePattern, null, null, 0, -1);
-            return Lists.transform(result, new Function<ConfigurationItemId, String>() {
-                @Override
-                public String apply(ConfigurationItemId input) {
-                    return input.getId();
+            RepositoryService repositoryService = getCommunicator().getProxies().getRepositoryService();
+            Type ciType = getDescriptorRegistry().typeForName(type);
+            Set<String> ids = newLinkedHashSet();
+            for (int page = 0; ; page++) {
+                List<ConfigurationItemId> result = repositoryService.query(ciType, null, null, namePattern, null, null, page, SEARCH_PAGE_SIZE);
+                boolean added = false;
+                for (ConfigurationItemId id : result) {
+                    added |= ids.add(id.getId());
+                }
+                // a page without new ids means the server ignores paging and returns the same results again
+                if (!added || result.size() < SEARCH_PAGE_SIZE) {
+                    break;
                 }
-            });
+            }
+            return newArrayList(ids);
         } catch (Exception e) {
             LOGGER.error(format("search fails for %s", type), e);
         }
@@ -84,8 +140,21 @@ public class DeployitServerImpl implements DeployitServer {
 
     @Override
     public ConfigurationItem importPackage(final String darFile) {
+        return importPackage(darFile, null);
+    }
+
+    @Override
+    public ConfigurationItem importPackage(final String darFile, JenkinsDeploymentListener listener) {
         DeployitCommunicator communicator = getCommunicator();
-        ConfigurationItem ci = new DeployitRemoteClient(communicator).importPackage(darFile);
+        File file = new File(darFile);
+        ConfigurationItem ci;
+        if (file.isFile()) {
+            // local packages go over the dedicated upload pool, urls and server side paths are imported through the communicator
+            ci = packageUploader.upload(file, communicator, listener);
+            XLDeployMetrics.getInstance().increment(XLDeployMetrics.UPLOADED_BYTES, file.length(), "server", booterConfig.getUrl());
+        } else {
+            ci = new DeployitRemoteClient(communicator).importPackage(darFile);
+        }
         return ci;
     }
 
@@ -97,6 +166,77 @@ public class DeployitServerImpl implements DeployitServer {
         new DeployCommand(deploymentService, taskService, repositoryService, deploymentOptions, listener).deploy(deploymentPackage, environment);
     }
 
+    @Override
+    public void deploy(List<String> deploymentPackages, String environment, JenkinsDeploymentOptions deploymentOptions, JenkinsDeploymentListener listener) {
+        DeploymentService deploymentService = getCommunicator().getProxies().getDeploymentService();
+        TaskService taskService = getCommunicator().getProxies().getTaskService();
+        RepositoryService repositoryService = getCommunicator().getProxies().getRepositoryService();
+        new DeployCommand(deploymentService, taskService, repositoryService, deploymentOptions, listener).deploy(deploymentPackages, environment);
+    }
+
+    @Override
+    public List<DeploymentResult> deploy(final List<String> deploymentPackages, List<String> environments, int maxConcurrentDeployments, final JenkinsDeploymentOptions deploymentOptions, final JenkinsDeploymentListener listener) {
+        final DeploymentService deploymentService = getCommunicator().getProxies().getDeploymentService();
+        final TaskService taskService = getCommunicator().getProxies().getTaskService();
+        final RepositoryService repositoryService = getCommunicator().getProxies().getRepositoryService();
+
+        int threads = Math.max(1, Math.min(maxConcurrentDeployments, environments.size()));
+        final String description = Joiner.on(", ").join(deploymentPackages);
+        listener.info(format("Deploying %s to %d environment(s), at most %d at a time", description, environments.size(), threads));
+        // worker threads need the same context classloader as the caller to talk to resteasy
+        final ClassLoader callerClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("xld-deploy-%d").setDaemon(true).build());
+
+        List<Future<DeploymentResult>> futures = newArrayList();
+        boolean completed = false;
+        try {
+            for (final String environment : environments) {
+                final JenkinsDeploymentListener environmentListener = listener.withPrefix("[" + environment + "] ");
+                futures.add(executor.submit(new Callable<DeploymentResult>() {
+                    @Override
+                    public DeploymentResult call() {
+                        Thread.currentThread().setContextClassLoader(callerClassLoader);
+                        long start = System.nanoTime();
+                        try {
+                            new DeployCommand(deploymentService, taskService, repositoryService, deploymentOptions, environmentListener).deploy(deploymentPackages, environment);
+                            return new DeploymentResult(environment, true, null, elapsedMillis(start));
+                        } catch (RuntimeException e) {
+                            listener.error(format("Deployment of %s to %s failed: %s", description, environment, e.getMessage()));
+                            return new DeploymentResult(environment, false, e.getMessage(), elapsedMillis(start));
+                        }
+                    }
+                }));
+            }
+
+            List<DeploymentResult> results = newArrayList();
+            for (Future<DeploymentResult> future : futures) {
+                results.add(future.get());
+            }
+            completed = true;
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeployitPluginException(format("Interrupted while deploying %s", description), e);
+        } catch (ExecutionException e) {
+            throw new DeployitPluginException(e.getCause());
+        } finally {
+            if (!completed) {
+                // an aborted build stops the queued deployments and interrupts the ones polling their task
+                for (Future<DeploymentResult> future : futures) {
+                    future.cancel(true);
+                }
+                executor.shutdownNow();
+            } else {
+                executor.shutdown();
+            }
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
 
     @Override
     public DeployitCommunicator newCommunicator() {
@@ -119,6 +259,16 @@ public class DeployitServerImpl implements DeployitServer {
         getDescriptorRegistry().reload();
     }
 
+    @Override
+    public boolean reloadIfTypesChanged() {
+        return getDescriptorRegistry().reloadIfTypesChanged();
+    }
+
+    @Override
+    public void close() {
+        packageUploader.close();
+    }
+
     @Override
     public ServerInfo getServerInfo() {
         return getCommunicator().getProxies().getServerService().getInfo();
@@ -0,0 +1,41 @@
+package com.xebialabs.deployit.ci.server;
+
+/**
+ * Outcome of deploying one package to one environment, as reported by a fan-out deployment.
+ */
+public class DeploymentResult {
+
+    private final String environment;
+    private final boolean success;
+    private final String message;
+    private final long durationMillis;
+
+    DeploymentResult(String environment, boolean success, String message, long durationMillis) {
+        this.environment = environment;
+        this.success = success;
+        this.message = message;
+        this.durationMillis = durationMillis;
+    }
+
+    public String getEnvironment() {
+        return environment;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%d ms)%s", success ? "SUCCESS" : "FAILED ", environment, durationMillis,
+                message == null ? "" : ": " + message);
+    }
+}
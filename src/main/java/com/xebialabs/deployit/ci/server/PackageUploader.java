@@ -0,0 +1,214 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.FileBody;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.net.UrlEscapers;
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.xebialabs.deployit.booter.remote.BooterConfig;
+import com.xebialabs.deployit.booter.remote.DeployitCommunicator;
+import com.xebialabs.deployit.ci.DeployitPluginException;
+import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.xltype.serialization.xstream.XStreamReaderWriterJenkins;
+
+import static java.lang.String.format;
+
+/**
+ * Uploads deployment packages over its own connection pool, so long running uploads cannot take the connections
+ * (or share the socket timeout) used for task polling and metadata calls. The upload client is derived from the
+ * communicator's client, so it uses the same SSL setup, proxy and (proxy) credentials.
+ */
+class PackageUploader implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackageUploader.class);
+
+    private final BooterConfig booterConfig;
+    private final boolean pat;
+    private final UploadThrottle serverThrottle;
+    private final UploadThrottle credentialThrottle = new UploadThrottle();
+    private final List<HttpClient> retiredClients = new ArrayList<HttpClient>();
+    private HttpClient httpClient;
+    private int uploadsInProgress;
+    private boolean closed;
+    private int poolSize = DeployitServer.DEFAULT_UPLOAD_POOL_SIZE;
+    private int socketTimeout = DeployitServer.DEFAULT_UPLOAD_SOCKET_TIMEOUT;
+
+    PackageUploader(BooterConfig booterConfig, boolean pat) {
+        this.booterConfig = booterConfig;
+        this.pat = pat;
+        this.serverThrottle = UploadThrottle.forServer(booterConfig.getUrl());
+    }
+
+    /**
+     * Changes pool size and timeout. A new client is built for the next upload; the previous one is closed once the
+     * uploads using it have finished.
+     */
+    synchronized void configure(int poolSize, int socketTimeout) {
+        if (this.poolSize == poolSize && this.socketTimeout == socketTimeout) {
+            return;
+        }
+        this.poolSize = poolSize;
+        this.socketTimeout = socketTimeout;
+        if (httpClient != null) {
+            retiredClients.add(httpClient);
+            httpClient = null;
+        }
+        closeRetiredClients();
+    }
+
+    /**
+     * Limits concurrent uploads and throughput of this server's credential; the limits of the XL Deploy server
+     * itself are shared by all credentials.
+     */
+    void configureLimits(int serverMaxConcurrentUploads, int serverKilobytesPerSecond, int maxConcurrentUploads, int kilobytesPerSecond) {
+        serverThrottle.configure(serverMaxConcurrentUploads, serverKilobytesPerSecond);
+        credentialThrottle.configure(maxConcurrentUploads, kilobytesPerSecond);
+    }
+
+    ConfigurationItem upload(File file, DeployitCommunicator communicator, JenkinsDeploymentListener listener) {
+        long queued = System.nanoTime();
+        // the credential's own slot first, so queued uploads of one credential do not hold server slots other
+        // credentials could use
+        try (UploadThrottle.Permit credentialPermit = credentialThrottle.acquire();
+             UploadThrottle.Permit serverPermit = serverThrottle.acquire()) {
+            long waitedNanos = System.nanoTime() - queued;
+            XLDeployMetrics.getInstance().histogram(XLDeployMetrics.UPLOAD_QUEUE_SECONDS, XLDeployMetrics.OPERATION_BUCKETS_MILLIS, "server", booterConfig.getUrl()).observe(waitedNanos);
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(waitedNanos);
+            if (listener != null && waitedMillis > 0) {
+                listener.info(format("Waited %d ms for an upload slot on %s", waitedMillis, booterConfig.getUrl()));
+            }
+            return upload(file, communicator);
+        }
+    }
+
+    private ConfigurationItem upload(File file, DeployitCommunicator communicator) {
+        // same base url as the communicator's REST services; the name may contain spaces, '#', '%' or '?'
+        HttpPost post = new HttpPost(booterConfig.getExtendedUrl() + "/package/upload/" + UrlEscapers.urlPathSegmentEscaper().escape(file.getName()));
+        List<RateLimiter> rateLimiters = rateLimiters();
+        // the file is streamed from disk through one small buffer, never held in memory as a whole. Zero-copy is not
+        // possible: HttpClient 4 writes entities to an OutputStream and does not expose the socket channel
+        ContentBody body = rateLimiters.isEmpty() ? new FileBody(file) : new ThrottledFileBody(file, rateLimiters);
+        post.setEntity(MultipartEntityBuilder.create().addPart("fileData", body).build());
+        LOGGER.debug("Uploading {} to {}", file, post.getURI());
+        try {
+            HttpResponse response = acquire(communicator).execute(post);
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status < 200 || status >= 300) {
+                String body = entity == null ? "" : EntityUtils.toString(entity);
+                throw new DeployitPluginException(format("Upload of %s failed with status %d: %s", file.getName(), status, body));
+            }
+            try (InputStream in = entity.getContent()) {
+                return (ConfigurationItem) XStreamReaderWriterJenkins.unmarshal(in, booterConfig.getKey());
+            }
+        } catch (IOException e) {
+            post.abort();
+            throw new DeployitPluginException(format("Upload of %s failed: %s", file.getName(), e.getMessage()), e);
+        } finally {
+            release();
+        }
+    }
+
+    private List<RateLimiter> rateLimiters() {
+        List<RateLimiter> rateLimiters = new ArrayList<RateLimiter>(2);
+        for (UploadThrottle throttle : new UploadThrottle[]{serverThrottle, credentialThrottle}) {
+            if (throttle.getRateLimiter() != null) {
+                rateLimiters.add(throttle.getRateLimiter());
+            }
+        }
+        return rateLimiters;
+    }
+
+    private synchronized HttpClient acquire(DeployitCommunicator communicator) {
+        uploadsInProgress++;
+        if (closed) {
+            // the server was evicted while a build still uses it, the client is closed again after this upload
+            HttpClient client = newHttpClient(communicator);
+            retiredClients.add(client);
+            return client;
+        }
+        if (httpClient == null) {
+            httpClient = newHttpClient(communicator);
+        }
+        return httpClient;
+    }
+
+    private synchronized void release() {
+        uploadsInProgress--;
+        closeRetiredClients();
+    }
+
+    private void closeRetiredClients() {
+        if (uploadsInProgress == 0) {
+            for (HttpClient client : retiredClients) {
+                closeQuietly(client);
+            }
+            retiredClients.clear();
+        }
+    }
+
+    /**
+     * Creates a client with its own pool that shares the scheme registry (SSL socket factories), parameters (proxy
+     * route and timeouts) and credentials (including proxy credentials) of the communicator's client.
+     */
+    @SuppressWarnings("deprecation")
+    private HttpClient newHttpClient(DeployitCommunicator communicator) {
+        HttpClient shared = communicator.getHttpClient();
+        PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager(shared.getConnectionManager().getSchemeRegistry());
+        connectionManager.setMaxTotal(poolSize);
+        connectionManager.setDefaultMaxPerRoute(poolSize);
+
+        DefaultHttpClient client = new DefaultHttpClient(connectionManager, shared.getParams().copy());
+        HttpConnectionParams.setSoTimeout(client.getParams(), socketTimeout);
+        if (shared instanceof AbstractHttpClient) {
+            client.setCredentialsProvider(((AbstractHttpClient) shared).getCredentialsProvider());
+        }
+        client.addRequestInterceptor(new PreemptiveAuthenticationInterceptor(pat), 0);
+        return client;
+    }
+
+    /**
+     * Closes the clients once the uploads in progress have finished; uploads started afterwards use a client of their own.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (httpClient != null) {
+            retiredClients.add(httpClient);
+            httpClient = null;
+        }
+        closeRetiredClients();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void closeQuietly(HttpClient client) {
+        try {
+            client.getConnectionManager().shutdown();
+        } catch (RuntimeException e) {
+            LOGGER.debug("Error closing upload client", e);
+        }
+    }
+}
@@ -23,22 +23,46 @@
 
 package com.xebialabs.deployit.ci.server;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableSet;
 
 import com.xebialabs.deployit.ci.Constants;
 import com.xebialabs.deployit.ci.DeployitPluginException;
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
 
+import hudson.PluginWrapper;
 import jenkins.model.Jenkins;
 
 public class PluginFirstClassloaderInvocationHandler implements InvocationHandler {
 
     private static final Object[] NO_ARGS = {};
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final ConcurrentMap<Method, Invoker> INVOKERS = new ConcurrentHashMap<Method, Invoker>();
+    // calls that wait for XL Deploy tasks or transfer whole packages, recorded apart from single requests
+    private static final ImmutableSet<String> OPERATIONS = ImmutableSet.of("deploy", "importPackage", "reload", "reloadIfTypesChanged");
+    private static volatile ClassLoader pluginClassLoader;
+
     private Object target;
+    private String scope;
+    private final ConcurrentMap<Method, XLDeployMetrics.Histogram> latencies = new ConcurrentHashMap<Method, XLDeployMetrics.Histogram>();
 
     public PluginFirstClassloaderInvocationHandler(Object target) {
+        this(target, "");
+    }
+
+    /**
+     * @param scope label (usually the XL Deploy server url) under which call latencies and errors are recorded
+     */
+    public PluginFirstClassloaderInvocationHandler(Object target, String scope) {
         this.target = target;
+        this.scope = scope;
     }
 
     @Override
@@ -50,23 +74,96 @@ public class PluginFirstClassloaderInvocationHandler implements InvocationHandle
         // Classloader magic required to bootstrap resteasy.
         final Thread currentThread = Thread.currentThread();
         final ClassLoader origClassLoader = currentThread.getContextClassLoader();
+        final ClassLoader classLoader = getPluginClassLoader();
+        final boolean swapClassLoader = origClassLoader != classLoader;
+        final long start = System.nanoTime();
+        boolean failed = true;
         try {
-            ClassLoader pluginClassLoader = Jenkins.getInstance().getPluginManager().getPlugin(Constants.DEPLOYIT_PLUGIN).classLoader;
-            currentThread.setContextClassLoader(pluginClassLoader);
-            return doInvoke(proxy, method, args);
-        } catch (InvocationTargetException e) {
-            // rather than capturing invocation exception we should capture the cause
-            if (null != e.getCause()) {
-                throw new DeployitPluginException(e.getCause());
-            } else {
-                throw new DeployitPluginException(e);
+            if (swapClassLoader) {
+                currentThread.setContextClassLoader(classLoader);
             }
+            Object result = doInvoke(proxy, method, args);
+            failed = false;
+            return result;
+        } catch (Error | DeployitPluginException e) {
+            throw e;
+        } catch (Throwable t) {
+            // method handles throw the target's exception as is, callers only expect plugin exceptions
+            throw new DeployitPluginException(t);
         } finally {
-            currentThread.setContextClassLoader(origClassLoader);
+            if (swapClassLoader) {
+                currentThread.setContextClassLoader(origClassLoader);
+            }
+            if (method.getDeclaringClass() != Object.class) {
+                latency(method).observe(System.nanoTime() - start);
+                if (failed) {
+                    XLDeployMetrics.getInstance().increment(XLDeployMetrics.REQUEST_ERRORS, "server", scope, "method", invoker(method).label);
+                }
+            }
         }
     }
 
+    private XLDeployMetrics.Histogram latency(Method method) {
+        XLDeployMetrics.Histogram histogram = latencies.get(method);
+        if (histogram == null) {
+            Invoker invoker = invoker(method);
+            histogram = invoker.operation
+                    ? XLDeployMetrics.getInstance().histogram(XLDeployMetrics.OPERATION_SECONDS, XLDeployMetrics.OPERATION_BUCKETS_MILLIS, "server", scope, "method", invoker.label)
+                    : XLDeployMetrics.getInstance().histogram(XLDeployMetrics.REQUEST_SECONDS, XLDeployMetrics.REQUEST_BUCKETS_MILLIS, "server", scope, "method", invoker.label);
+            // the registry hands out the same histogram for the same labels, so a lost race is harmless
+            latencies.put(method, histogram);
+        }
+        return histogram;
+    }
+
     protected Object doInvoke(Object proxy, Method method, Object[] args) throws Throwable {
-        return method.invoke(target, args);
+        return invoker(method).handle.invokeExact(target, args);
+    }
+
+    /**
+     * The plugin classloader does not change for the lifetime of the plugin, so it is looked up only once.
+     */
+    static ClassLoader getPluginClassLoader() {
+        ClassLoader classLoader = pluginClassLoader;
+        if (classLoader == null) {
+            Jenkins jenkins = Jenkins.getInstance();
+            PluginWrapper plugin = jenkins == null ? null : jenkins.getPluginManager().getPlugin(Constants.DEPLOYIT_PLUGIN);
+            classLoader = plugin != null ? plugin.classLoader : PluginFirstClassloaderInvocationHandler.class.getClassLoader();
+            pluginClassLoader = classLoader;
+        }
+        return classLoader;
+    }
+
+    private static Invoker invoker(Method method) {
+        Invoker invoker = INVOKERS.get(method);
+        if (invoker == null) {
+            invoker = new Invoker(method);
+            Invoker existing = INVOKERS.putIfAbsent(method, invoker);
+            if (existing != null) {
+                invoker = existing;
+            }
+        }
+        return invoker;
+    }
+
+    /**
+     * Spreading {@link MethodHandle} of type {@code (Object target, Object[] args)Object} plus the metrics label of a proxied method.
+     */
+    private static final class Invoker {
+        private final MethodHandle handle;
+        private final String label;
+        private final boolean operation;
+
+        Invoker(Method method) {
+            try {
+                this.handle = MethodHandles.publicLookup().unreflect(method)
+                        .asSpreader(Object[].class, method.getParameterTypes().length)
+                        .asType(INVOKER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new DeployitPluginException("Cannot access " + method, e);
+            }
+            this.label = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+            this.operation = OPERATIONS.contains(method.getName());
+        }
     }
 }
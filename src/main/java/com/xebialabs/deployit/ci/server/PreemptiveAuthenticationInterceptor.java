@@ -25,7 +25,10 @@ package com.xebialabs.deployit.ci.server;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.apache.http.Header;
 import org.apache.http.HttpException;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
@@ -35,14 +38,36 @@ import org.apache.http.auth.Credentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.protocol.ExecutionContext;
 import org.apache.http.protocol.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Objects;
+
+/**
+ * Sends credentials with the first request instead of waiting for a 401 challenge. The encoded header is computed once per
+ * target host and credentials; a change of credentials results in a new cache key.
+ */
 public class PreemptiveAuthenticationInterceptor implements HttpRequestInterceptor, Serializable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PreemptiveAuthenticationInterceptor.class);
+    private static final int MAX_CACHED_HEADERS = 16;
+
+    private final boolean bearerToken;
+    private transient volatile ConcurrentMap<AuthKey, Header> headers;
+
+    public PreemptiveAuthenticationInterceptor() {
+        this(false);
+    }
+
+    /**
+     * @param bearerToken whether the password is a personal access token, sent as a bearer token instead of basic authentication
+     */
+    public PreemptiveAuthenticationInterceptor(boolean bearerToken) {
+        this.bearerToken = bearerToken;
+    }
 
     @Override
     public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
@@ -53,11 +78,64 @@ public class PreemptiveAuthenticationInterceptor implements HttpRequestIntercept
             if(credentialsProvider != null) {
                 Credentials credentials = credentialsProvider.getCredentials(new AuthScope(targetHost.getHostName(), targetHost.getPort()));
                 if (credentials != null) {
-                    request.setHeader(new BasicScheme().authenticate(credentials, request, context));
+                    request.setHeader(authorizationHeader(targetHost, credentials, request, context));
                     LOGGER.trace("Set 'Authorization' header {} for request: {}", credentials.getUserPrincipal(), request.getRequestLine());
                 }
             }
         }
     }
 
-}
\ No newline at end of file
+    private Header authorizationHeader(HttpHost targetHost, Credentials credentials, HttpRequest request, HttpContext context) throws HttpException {
+        ConcurrentMap<AuthKey, Header> cache = headers;
+        if (cache == null) {
+            cache = headers = new ConcurrentHashMap<AuthKey, Header>();
+        }
+        String userName = credentials.getUserPrincipal() == null ? null : credentials.getUserPrincipal().getName();
+        AuthKey key = new AuthKey(targetHost.getHostName(), targetHost.getPort(), userName, credentials.getPassword(), bearerToken);
+        Header header = cache.get(key);
+        if (header == null) {
+            if (bearerToken) {
+                header = new BasicHeader("Authorization", "Bearer " + credentials.getPassword());
+            } else {
+                header = new BasicScheme().authenticate(credentials, request, context);
+            }
+            if (cache.size() >= MAX_CACHED_HEADERS) {
+                // stale credentials only accumulate when they are changed, start over rather than tracking usage
+                cache.clear();
+            }
+            cache.put(key, header);
+        }
+        return header;
+    }
+
+    private static final class AuthKey {
+        private final String host;
+        private final int port;
+        private final String userName;
+        private final String password;
+        private final boolean bearerToken;
+
+        AuthKey(String host, int port, String userName, String password, boolean bearerToken) {
+            this.host = host;
+            this.port = port;
+            this.userName = userName;
+            this.password = password;
+            this.bearerToken = bearerToken;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof AuthKey)) {
+                return false;
+            }
+            AuthKey other = (AuthKey) o;
+            return port == other.port && bearerToken == other.bearerToken && Objects.equal(host, other.host)
+                    && Objects.equal(userName, other.userName) && Objects.equal(password, other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(host, port, userName, password, bearerToken);
+        }
+    }
+}
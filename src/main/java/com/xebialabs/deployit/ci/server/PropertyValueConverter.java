@@ -0,0 +1,128 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.base.Splitter;
+import com.google.common.collect.FluentIterable;
+
+import com.xebialabs.deployit.ci.util.Strings2;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyKind;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.base.BaseConfigurationItem;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+
+/**
+ * Converts the string form of a property value, as given in a job configuration, to the value of its property kind.
+ * The converter of a property is chosen once, when its setter is created, instead of on every value.
+ */
+enum PropertyValueConverter {
+
+    AS_IS {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return value;
+        }
+    },
+    BOOLEAN {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return Boolean.parseBoolean(value);
+        }
+    },
+    INTEGER {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return value.isEmpty() ? null : Integer.parseInt(value);
+        }
+    },
+    CI {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return ciRef(value, pd);
+        }
+    },
+    SET_OF_STRING {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return newLinkedHashSet(split(value));
+        }
+    },
+    LIST_OF_STRING {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return newArrayList(split(value));
+        }
+    },
+    SET_OF_CI {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return newLinkedHashSet(ciRefs(value, pd));
+        }
+    },
+    LIST_OF_CI {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return newArrayList(ciRefs(value, pd));
+        }
+    },
+    MAP_STRING_STRING {
+        @Override
+        Object convert(String value, PropertyDescriptor pd) {
+            return Strings2.convertToMap(value);
+        }
+    };
+
+    private static final Splitter SEMICOLON_SPLITTER = Splitter.on(';').trimResults().omitEmptyStrings();
+    private static final Splitter NEWLINE_SPLITTER = Splitter.on('\n').trimResults().omitEmptyStrings();
+
+    private static final Map<PropertyKind, PropertyValueConverter> BY_KIND = new EnumMap<PropertyKind, PropertyValueConverter>(PropertyKind.class);
+
+    static {
+        BY_KIND.put(PropertyKind.BOOLEAN, BOOLEAN);
+        BY_KIND.put(PropertyKind.INTEGER, INTEGER);
+        BY_KIND.put(PropertyKind.CI, CI);
+        BY_KIND.put(PropertyKind.SET_OF_STRING, SET_OF_STRING);
+        BY_KIND.put(PropertyKind.LIST_OF_STRING, LIST_OF_STRING);
+        BY_KIND.put(PropertyKind.SET_OF_CI, SET_OF_CI);
+        BY_KIND.put(PropertyKind.LIST_OF_CI, LIST_OF_CI);
+        BY_KIND.put(PropertyKind.MAP_STRING_STRING, MAP_STRING_STRING);
+    }
+
+    /**
+     * @param value the string form, never null
+     */
+    abstract Object convert(String value, PropertyDescriptor pd);
+
+    static PropertyValueConverter forKind(PropertyKind kind) {
+        PropertyValueConverter converter = BY_KIND.get(kind);
+        return converter != null ? converter : AS_IS;
+    }
+
+    private static Iterable<String> split(String value) {
+        if (value.indexOf(';') >= 0) {
+            return SEMICOLON_SPLITTER.split(value);
+        }
+        return NEWLINE_SPLITTER.split(value);
+    }
+
+    private static Iterable<ConfigurationItem> ciRefs(String value, final PropertyDescriptor pd) {
+        return FluentIterable.from(split(value)).transform(new Function<String, ConfigurationItem>() {
+            @Override
+            public ConfigurationItem apply(String input) {
+                return ciRef(input, pd);
+            }
+        });
+    }
+
+    private static ConfigurationItem ciRef(String name, PropertyDescriptor pd) {
+        BaseConfigurationItem ci = new BaseConfigurationItem();
+        ci.setId(name);
+        ci.setType(pd.getReferencedType());
+        return ci;
+    }
+}
@@ -0,0 +1,65 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Multipart file part that consults upload rate limiters for every chunk it writes. Without limiters a plain
+ * {@link org.apache.http.entity.mime.content.FileBody} is used.
+ */
+class ThrottledFileBody extends AbstractContentBody {
+
+    // small chunks, so the bandwidth is used evenly instead of in bursts
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final File file;
+    private final List<RateLimiter> rateLimiters;
+
+    /**
+     * @param rateLimiters limiters in bytes per second, each of them is consulted for every chunk
+     */
+    ThrottledFileBody(File file, List<RateLimiter> rateLimiters) {
+        super(ContentType.APPLICATION_OCTET_STREAM);
+        this.file = file;
+        this.rateLimiters = rateLimiters;
+    }
+
+    @Override
+    public String getFilename() {
+        return file.getName();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = new FileInputStream(file)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                for (RateLimiter rateLimiter : rateLimiters) {
+                    rateLimiter.acquire(count);
+                }
+                out.write(buffer, 0, count);
+            }
+        }
+        out.flush();
+    }
+
+    @Override
+    public String getTransferEncoding() {
+        return "binary";
+    }
+
+    @Override
+    public long getContentLength() {
+        return file.length();
+    }
+}
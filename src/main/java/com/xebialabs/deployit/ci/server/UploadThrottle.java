@@ -0,0 +1,125 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.xebialabs.deployit.ci.DeployitPluginException;
+
+/**
+ * Limits the number of concurrent uploads and their combined throughput. There is one throttle per XL Deploy server
+ * url, shared by all credentials, and one per server instance for the limits of its credential.
+ * A limit of zero or less means unlimited; limits can be changed while uploads are running.
+ */
+class UploadThrottle {
+
+    private static final ConcurrentMap<String, UploadThrottle> SERVER_THROTTLES = new ConcurrentHashMap<String, UploadThrottle>();
+
+    private volatile ResizableSemaphore slots;
+    private volatile RateLimiter rateLimiter;
+    private int maxConcurrentUploads;
+    private int kilobytesPerSecond;
+
+    static UploadThrottle forServer(String serverUrl) {
+        UploadThrottle throttle = SERVER_THROTTLES.get(serverUrl);
+        if (throttle == null) {
+            UploadThrottle created = new UploadThrottle();
+            throttle = SERVER_THROTTLES.putIfAbsent(serverUrl, created);
+            if (throttle == null) {
+                throttle = created;
+            }
+        }
+        return throttle;
+    }
+
+    /**
+     * Drops the throttles of servers that are no longer configured, uploaders created before keep theirs.
+     */
+    static void retainServers(Collection<String> serverUrls) {
+        SERVER_THROTTLES.keySet().retainAll(serverUrls);
+    }
+
+    synchronized void configure(int maxConcurrentUploads, int kilobytesPerSecond) {
+        if (this.maxConcurrentUploads != maxConcurrentUploads) {
+            if (slots != null && maxConcurrentUploads > 0) {
+                // running uploads keep counting against the new limit, a lower one is reached as they finish
+                int delta = maxConcurrentUploads - this.maxConcurrentUploads;
+                if (delta > 0) {
+                    slots.release(delta);
+                } else {
+                    slots.reducePermits(-delta);
+                }
+            } else {
+                // uploads started while unlimited hold no slot; those holding one release it where they took it
+                slots = maxConcurrentUploads > 0 ? new ResizableSemaphore(maxConcurrentUploads) : null;
+            }
+            this.maxConcurrentUploads = maxConcurrentUploads;
+        }
+        if (this.kilobytesPerSecond != kilobytesPerSecond) {
+            if (kilobytesPerSecond <= 0) {
+                rateLimiter = null;
+            } else if (rateLimiter == null) {
+                rateLimiter = RateLimiter.create(kilobytesPerSecond * 1024.0);
+            } else {
+                rateLimiter.setRate(kilobytesPerSecond * 1024.0);
+            }
+            this.kilobytesPerSecond = kilobytesPerSecond;
+        }
+    }
+
+    /**
+     * Waits for an upload slot; the returned permit must be closed when the upload is done.
+     */
+    Permit acquire() {
+        ResizableSemaphore current = slots;
+        if (current == null) {
+            return new Permit(null);
+        }
+        try {
+            current.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeployitPluginException("Interrupted while waiting for an upload slot", e);
+        }
+        return new Permit(current);
+    }
+
+    /**
+     * @return the rate limiter in bytes per second, or null when throughput is not limited
+     */
+    RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Exposes {@link Semaphore#reducePermits(int)}, the available permits may go negative until enough are released.
+     */
+    private static class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    static class Permit implements AutoCloseable {
+        private final Semaphore slots;
+
+        private Permit(Semaphore slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public void close() {
+            if (slots != null) {
+                slots.release();
+            }
+        }
+    }
+}
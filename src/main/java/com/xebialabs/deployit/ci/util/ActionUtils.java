@@ -2,6 +2,7 @@ package com.xebialabs.deployit.ci.util;
 
 import com.xebialabs.deployit.booter.remote.BooterConfig;
 import com.xebialabs.deployit.ci.action.XLDeployPublishAction;
+import com.xebialabs.deployit.ci.action.XLDeployTimingAction;
 import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
 import com.xebialabs.deployit.plugin.api.validation.ValidationMessage;
 import hudson.model.Run;
@@ -31,4 +32,19 @@ public class ActionUtils {
 
         run.addAction(action);
     }
+
+    public static void addTimingAction(Run<?,?> run, PhaseTimer timer) {
+        if (timer.getTimings().isEmpty()) {
+            return;
+        }
+
+        XLDeployTimingAction action = run.getAction(XLDeployTimingAction.class);
+        if (action == null) {
+            action = new XLDeployTimingAction();
+            run.addAction(action);
+        }
+        for (PhaseTimer.PhaseTiming timing : timer.getTimings()) {
+            action.addPhase(timing.getPhase(), timing.getTarget(), timing.getDurationNanos());
+        }
+    }
 }
@@ -0,0 +1,90 @@
+package com.xebialabs.deployit.ci.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A string parsed once into literal and variable segments, rendered against build variables with the same result as
+ * {@link hudson.EnvVars#expand(String)}: {@code $VAR} and {@code ${VAR}} are replaced when the variable is defined and
+ * left as-is otherwise, {@code $$} becomes {@code $}, and replaced values are not expanded again.
+ */
+public final class EnvTemplate {
+
+    // same syntax as hudson.Util.replaceMacro
+    private static final Pattern VARIABLE = Pattern.compile("\\$([A-Za-z0-9_]+|\\{[A-Za-z0-9_.]+\\}|\\$)");
+
+    private final String source;
+    // per segment either a literal (variable null) or a variable with its original text as fallback
+    private final String[] texts;
+    private final String[] variables;
+
+    private EnvTemplate(String source, String[] texts, String[] variables) {
+        this.source = source;
+        this.texts = texts;
+        this.variables = variables;
+    }
+
+    public static EnvTemplate compile(String source) {
+        if (source == null || source.indexOf('$') < 0) {
+            return new EnvTemplate(source, null, null);
+        }
+        List<String> texts = Lists.newArrayList();
+        List<String> variables = Lists.newArrayList();
+        Matcher m = VARIABLE.matcher(source);
+        int start = 0;
+        while (m.find()) {
+            if (m.start() > start) {
+                texts.add(source.substring(start, m.start()));
+                variables.add(null);
+            }
+            String key = m.group(1);
+            if (key.equals("$")) {
+                texts.add("$");
+                variables.add(null);
+            } else {
+                texts.add(m.group());
+                variables.add(key.charAt(0) == '{' ? key.substring(1, key.length() - 1) : key);
+            }
+            start = m.end();
+        }
+        if (start < source.length()) {
+            texts.add(source.substring(start));
+            variables.add(null);
+        }
+        return new EnvTemplate(source, texts.toArray(new String[texts.size()]), variables.toArray(new String[variables.size()]));
+    }
+
+    /**
+     * @return the cached template when it was compiled from the given source, a newly compiled one otherwise
+     */
+    public static EnvTemplate reuse(EnvTemplate cached, String source) {
+        if (cached != null && (cached.source == null ? source == null : cached.source.equals(source))) {
+            return cached;
+        }
+        return compile(source);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public boolean hasVariables() {
+        return texts != null;
+    }
+
+    public String expand(Map<String, String> env) {
+        if (texts == null) {
+            return source;
+        }
+        StringBuilder sb = new StringBuilder(source.length() + 16);
+        for (int i = 0; i < texts.length; i++) {
+            String value = variables[i] == null ? null : env.get(variables[i]);
+            sb.append(value != null ? value : texts[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -29,14 +29,33 @@ import hudson.model.TaskListener;
 import org.jvnet.localizer.Localizable;
 
 
+/**
+ * Shared by the threads resolving deployables and running deployments in parallel, every method writes whole lines.
+ */
 public class JenkinsDeploymentListener implements Serializable {
 
     private final TaskListener listener;
     private final boolean debug;
+    private final PhaseTimer timer;
+    private final String prefix;
 
     public JenkinsDeploymentListener(TaskListener listener, boolean debug) {
+        this(listener, debug, new PhaseTimer(), "");
+    }
+
+    private JenkinsDeploymentListener(TaskListener listener, boolean debug, PhaseTimer timer, String prefix) {
         this.listener = listener;
         this.debug = debug;
+        this.timer = timer;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return a listener writing to the same log and timer with every line prefixed, e.g. with the environment of one
+     * of several deployments running in parallel
+     */
+    public JenkinsDeploymentListener withPrefix(String prefix) {
+        return new JenkinsDeploymentListener(listener, debug, timer, this.prefix + prefix);
     }
 
     public void info(Localizable localizable) {
@@ -47,20 +66,27 @@ public class JenkinsDeploymentListener implements Serializable {
         error(String.valueOf(localizable));
     }
 
+    public PhaseTimer getTimer() {
+        return timer;
+    }
+
     public void debug(String message) {
         if (debug)
-            listener.getLogger().println("Debug: " + message);
+            listener.getLogger().println("Debug: " + prefix + message);
     }
 
     public void info(String message) {
-        listener.getLogger().println("Info: " + message);
+        listener.getLogger().println("Info: " + prefix + message);
     }
 
     public void trace(String message) {
-        listener.getLogger().println("Trace: " + message);
+        listener.getLogger().println("Trace: " + prefix + message);
     }
 
     public void error(String message) {
-        listener.error(message);
+        // the task listener prints the error marker and the message separately, keep lines of concurrent callers apart
+        synchronized (listener.getLogger()) {
+            listener.error(prefix + message);
+        }
     }
 }
@@ -0,0 +1,77 @@
+package com.xebialabs.deployit.ci.util;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects wall clock timings of the packaging, import and deployment phases of a build.
+ * Usage: {@code try (PhaseTimer.Split ignored = timer.start("validate", environment)) { ... }}
+ */
+public class PhaseTimer implements Serializable {
+
+    private final List<PhaseTiming> timings = new CopyOnWriteArrayList<PhaseTiming>();
+
+    public Split start(String phase) {
+        return start(phase, null);
+    }
+
+    public Split start(String phase, String target) {
+        return new Split(phase, target, System.nanoTime());
+    }
+
+    public void record(String phase, String target, long durationNanos) {
+        timings.add(new PhaseTiming(phase, target, durationNanos));
+    }
+
+    public List<PhaseTiming> getTimings() {
+        return Collections.unmodifiableList(timings);
+    }
+
+    public class Split implements AutoCloseable {
+        private final String phase;
+        private final String target;
+        private final long startNanos;
+
+        private Split(String phase, String target, long startNanos) {
+            this.phase = phase;
+            this.target = target;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            record(phase, target, System.nanoTime() - startNanos);
+        }
+    }
+
+    public static class PhaseTiming implements Serializable {
+        private final String phase;
+        private final String target;
+        private final long durationNanos;
+
+        PhaseTiming(String phase, String target, long durationNanos) {
+            this.phase = phase;
+            this.target = target;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public long getDurationMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+        }
+    }
+}
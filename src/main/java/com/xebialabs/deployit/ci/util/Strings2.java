@@ -37,11 +37,14 @@ public class Strings2 {
     private static final String QUOTE_CHARACTER = "\"";
     private static final String AMP_MARKER = "::AMP::";
     private static final String EQUAL_MARKER = "::EQUAL::";
-    private static final String AMP_ESCAPE_SEQ = "\\\\&";
-    private static final String EQUAL_ESCAPE_SEQ = "\\\\=";
+    private static final String AMP_ESCAPE_SEQ = "\\&";
+    private static final String EQUAL_ESCAPE_SEQ = "\\=";
+
+    private static final Splitter COMMA_SPLITTER = Splitter.on(COMMA_SEPARATOR).trimResults();
+    private static final Splitter.MapSplitter MAP_SPLITTER = Splitter.on('&').withKeyValueSeparator("=");
 
     public static List<String> commaSeparatedListToList(String commaSeparatedList) {
-        return ImmutableList.copyOf(Splitter.on(COMMA_SEPARATOR).trimResults().split(commaSeparatedList));
+        return ImmutableList.copyOf(COMMA_SPLITTER.split(commaSeparatedList));
     }
 
     public static String stripEnclosingQuotes(String value) {
@@ -51,7 +54,7 @@ public class Strings2 {
 
     public static Map convertToMap(String val) {
         val = replaceEscapedCharactersWithMarkers(val);
-        Map<String,String> values = Splitter.on('&').withKeyValueSeparator("=").split(val);
+        Map<String,String> values = MAP_SPLITTER.split(val);
         return Collections.unmodifiableMap(replaceMarkersWithEscapedCharacters(values));
     }
 
@@ -64,10 +67,28 @@ public class Strings2 {
     }
 
     private static String replaceEscapedCharactersWithMarkers(String val) {
-        return val.replaceAll(AMP_ESCAPE_SEQ, AMP_MARKER).replaceAll(EQUAL_ESCAPE_SEQ, EQUAL_MARKER);
+        return replace(replace(val, AMP_ESCAPE_SEQ, AMP_MARKER), EQUAL_ESCAPE_SEQ, EQUAL_MARKER);
     }
 
     private static String replaceMarkers(String val) {
-        return val.replaceAll(AMP_MARKER, "&").replaceAll(EQUAL_MARKER, "=");
+        return replace(replace(val, AMP_MARKER, "&"), EQUAL_MARKER, "=");
+    }
+
+    /**
+     * Literal replacement without compiling a pattern, returns the value itself when there is nothing to replace.
+     */
+    private static String replace(String val, String target, String replacement) {
+        int index = val.indexOf(target);
+        if (index < 0) {
+            return val;
+        }
+        StringBuilder sb = new StringBuilder(val.length());
+        int start = 0;
+        while (index >= 0) {
+            sb.append(val, start, index).append(replacement);
+            start = index + target.length();
+            index = val.indexOf(target, start);
+        }
+        return sb.append(val, start, val.length()).toString();
     }
 }
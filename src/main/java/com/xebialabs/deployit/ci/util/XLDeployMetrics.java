@@ -0,0 +1,260 @@
+package com.xebialabs.deployit.ci.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import com.google.common.collect.Maps;
+
+/**
+ * In-process registry of counters, gauges and latency histograms describing the traffic between Jenkins and
+ * XL Deploy. Exposed through {@link com.xebialabs.deployit.ci.action.XLDeployMetricsAction} as JSON and in the
+ * Prometheus text format.
+ */
+public final class XLDeployMetrics {
+
+    public static final String REQUEST_SECONDS = "xldeploy_client_request_seconds";
+    public static final String OPERATION_SECONDS = "xldeploy_client_operation_seconds";
+    public static final String REQUEST_ERRORS = "xldeploy_client_request_errors_total";
+    public static final String UPLOADED_BYTES = "xldeploy_client_uploaded_bytes_total";
+    public static final String UPLOAD_QUEUE_SECONDS = "xldeploy_client_upload_queue_seconds";
+    public static final String ACTIVE_POLLS = "xldeploy_client_active_task_polls";
+    public static final String REGISTRY_RELOADS = "xldeploy_registry_reloads_total";
+    public static final String SERVER_CACHE = "xldeploy_server_cache_requests_total";
+
+    /** Buckets for single requests to XL Deploy. */
+    public static final long[] REQUEST_BUCKETS_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+    /** Buckets for operations spanning many requests, such as a deployment including its task, up to an hour. */
+    public static final long[] OPERATION_BUCKETS_MILLIS = {1000, 5000, 15000, 30000, 60000, 120000, 300000, 600000, 1200000, 1800000, 3600000};
+
+    private static final XLDeployMetrics INSTANCE = new XLDeployMetrics();
+
+    private final ConcurrentMap<MetricKey, LongAdder> counters = new ConcurrentSkipListMap<MetricKey, LongAdder>();
+    private final ConcurrentMap<MetricKey, LongAdder> gauges = new ConcurrentSkipListMap<MetricKey, LongAdder>();
+    private final ConcurrentMap<MetricKey, Histogram> histograms = new ConcurrentSkipListMap<MetricKey, Histogram>();
+
+    XLDeployMetrics() {
+    }
+
+    public static XLDeployMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds to a monotonic counter. Labels are given as alternating name/value pairs.
+     */
+    public void increment(String name, long delta, String... labels) {
+        adder(counters, new MetricKey(name, labels)).add(delta);
+    }
+
+    public void increment(String name, String... labels) {
+        increment(name, 1, labels);
+    }
+
+    /**
+     * Moves a gauge up or down, e.g. the number of tasks currently being polled.
+     */
+    public void gauge(String name, long delta, String... labels) {
+        adder(gauges, new MetricKey(name, labels)).add(delta);
+    }
+
+    /**
+     * Returns the histogram for the given name and labels, so frequent callers can look it up once and observe into
+     * it directly. The buckets of the first call for a name and labels are kept.
+     */
+    public Histogram histogram(String name, long[] bucketsMillis, String... labels) {
+        MetricKey key = new MetricKey(name, labels);
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            Histogram created = new Histogram(bucketsMillis);
+            histogram = histograms.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("counters", adders(counters));
+        json.put("gauges", adders(gauges));
+        JSONArray jsonHistograms = new JSONArray();
+        for (Map.Entry<MetricKey, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            JSONObject item = entry.getKey().toJson();
+            item.put("count", histogram.count.sum());
+            item.put("sumMillis", TimeUnit.NANOSECONDS.toMillis(histogram.sumNanos.sum()));
+            JSONObject buckets = new JSONObject();
+            long cumulative = 0;
+            for (int i = 0; i < histogram.bucketsMillis.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                buckets.put(Long.toString(histogram.bucketsMillis[i]), cumulative);
+            }
+            item.put("bucketsMillis", buckets);
+            jsonHistograms.add(item);
+        }
+        json.put("histograms", jsonHistograms);
+        return json;
+    }
+
+    public void writePrometheus(Writer out) throws IOException {
+        String current = null;
+        for (Map.Entry<MetricKey, LongAdder> entry : counters.entrySet()) {
+            current = header(out, current, entry.getKey().name, "counter");
+            out.write(entry.getKey().format("", null) + " " + entry.getValue().sum() + "\n");
+        }
+        for (Map.Entry<MetricKey, LongAdder> entry : gauges.entrySet()) {
+            current = header(out, current, entry.getKey().name, "gauge");
+            out.write(entry.getKey().format("", null) + " " + entry.getValue().sum() + "\n");
+        }
+        for (Map.Entry<MetricKey, Histogram> entry : histograms.entrySet()) {
+            MetricKey key = entry.getKey();
+            Histogram histogram = entry.getValue();
+            current = header(out, current, key.name, "histogram");
+            long cumulative = 0;
+            for (int i = 0; i < histogram.bucketsMillis.length; i++) {
+                cumulative += histogram.buckets[i].sum();
+                out.write(key.format("_bucket", Double.toString(histogram.bucketsMillis[i] / 1000d)) + " " + cumulative + "\n");
+            }
+            long count = histogram.count.sum();
+            out.write(key.format("_bucket", "+Inf") + " " + count + "\n");
+            out.write(key.format("_sum", null) + " " + histogram.sumNanos.sum() / 1e9d + "\n");
+            out.write(key.format("_count", null) + " " + count + "\n");
+        }
+        out.flush();
+    }
+
+    private static String header(Writer out, String current, String name, String type) throws IOException {
+        if (!name.equals(current)) {
+            out.write("# TYPE " + name + " " + type + "\n");
+        }
+        return name;
+    }
+
+    private static LongAdder adder(ConcurrentMap<MetricKey, LongAdder> map, MetricKey key) {
+        LongAdder adder = map.get(key);
+        if (adder == null) {
+            LongAdder created = new LongAdder();
+            adder = map.putIfAbsent(key, created);
+            if (adder == null) {
+                adder = created;
+            }
+        }
+        return adder;
+    }
+
+    private static JSONArray adders(Map<MetricKey, LongAdder> map) {
+        JSONArray array = new JSONArray();
+        for (Map.Entry<MetricKey, LongAdder> entry : map.entrySet()) {
+            JSONObject item = entry.getKey().toJson();
+            item.put("value", entry.getValue().sum());
+            array.add(item);
+        }
+        return array;
+    }
+
+    public static final class Histogram {
+        private final long[] bucketsMillis;
+        private final LongAdder[] buckets;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(long[] bucketsMillis) {
+            this.bucketsMillis = bucketsMillis.clone();
+            this.buckets = new LongAdder[bucketsMillis.length];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observe(long durationNanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+            for (int i = 0; i < bucketsMillis.length; i++) {
+                if (millis <= bucketsMillis[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+            count.increment();
+            sumNanos.add(durationNanos);
+        }
+    }
+
+    private static final class MetricKey implements Comparable<MetricKey> {
+        private final String name;
+        private final String[] labels;
+
+        MetricKey(String name, String... labels) {
+            if (labels.length % 2 != 0) {
+                throw new IllegalArgumentException("Labels must be given as name/value pairs: " + Arrays.toString(labels));
+            }
+            this.name = name;
+            this.labels = labels;
+        }
+
+        String format(String suffix, String le) {
+            StringBuilder sb = new StringBuilder(name).append(suffix);
+            if (labels.length == 0 && le == null) {
+                return sb.toString();
+            }
+            sb.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+            }
+            if (le != null) {
+                sb.append(labels.length > 0 ? "," : "").append("le=\"").append(le).append('"');
+            }
+            return sb.append('}').toString();
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("name", name);
+            SortedMap<String, String> labelMap = Maps.newTreeMap();
+            for (int i = 0; i < labels.length; i += 2) {
+                labelMap.put(labels[i], labels[i + 1]);
+            }
+            json.put("labels", labelMap);
+            return json;
+        }
+
+        private static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        }
+
+        @Override
+        public int compareTo(MetricKey o) {
+            int result = name.compareTo(o.name);
+            for (int i = 0; result == 0 && i < Math.min(labels.length, o.labels.length); i++) {
+                result = String.valueOf(labels[i]).compareTo(String.valueOf(o.labels[i]));
+            }
+            return result != 0 ? result : labels.length - o.labels.length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MetricKey && compareTo((MetricKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + Arrays.hashCode(labels);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.xebialabs.deployit.ci.workflow;
 
+import com.google.common.io.BaseEncoding;
 import com.xebialabs.overthere.RuntimeIOException;
 import com.xebialabs.overthere.util.OverthereUtils;
 import de.schlichtherle.truezip.file.TArchiveDetector;
@@ -9,20 +10,35 @@ import de.schlichtherle.truezip.file.TVFS;
 import hudson.EnvVars;
 import hudson.remoting.Callable;
 import org.jenkinsci.remoting.RoleChecker;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.io.File.separator;
 
@@ -35,6 +51,7 @@ public class DARPackageUtil implements Callable<String, IOException> {
     private final String darPath;
     private final String workspace;
     private final EnvVars envVars;
+    private boolean checksums;
 
     public DARPackageUtil(String artifactsPath, String manifestPath, String darPath, EnvVars envVars) {
         this.artifactsPath = artifactsPath;
@@ -44,20 +61,34 @@ public class DARPackageUtil implements Callable<String, IOException> {
         this.envVars = envVars;
     }
 
+    /**
+     * When enabled, the SHA-1 of every file artifact is computed while it is copied into the package and written to
+     * the manifest, so the artifacts are read only once and XL Deploy does not need to hash them on import.
+     */
+    public void setChecksums(boolean checksums) {
+        this.checksums = checksums;
+    }
+
     public String call() throws IOException {
         String manifestContent = replaceEnvVarInManifest();
         List<String> filePathsToBeAdded = filterFiles(manifestContent);
         String packagePath = outputFilePath();
         try {
-            addManifest(packagePath);
-            addArtifactsAndFolders(filePathsToBeAdded, packagePath);
+            if (checksums) {
+                Map<String, String> checksumsByFile = addArtifactsAndFolders(filePathsToBeAdded, packagePath);
+                addManifest(packagePath, addChecksums(manifestContent, checksumsByFile));
+            } else {
+                addManifest(packagePath);
+                addArtifactsAndFolders(filePathsToBeAdded, packagePath);
+            }
         } finally {
             TVFS.umount();
         }
         return packagePath;
     }
 
-    private void addArtifactsAndFolders(List<String> filePathsToBeAdded, String packagePath) throws FileNotFoundException {
+    private Map<String, String> addArtifactsAndFolders(List<String> filePathsToBeAdded, String packagePath) throws FileNotFoundException {
+        Map<String, String> checksumsByFile = new HashMap<>();
         for (String filePath : filePathsToBeAdded) {
             File sourceFile = new File(this.workspace + separator + artifactsPath + separator + filePath);
             if (sourceFile.isDirectory()) {
@@ -67,9 +98,24 @@ public class DARPackageUtil implements Callable<String, IOException> {
             } else {
                 TFile artifactDir = new TFile(packagePath, stripFilePath(filePath), TArchiveDetector.ALL);
                 artifactDir.mkdirs();
-                copyFile(new FileInputStream(sourceFile), new TFile(artifactDir, sourceFile.getName(), TArchiveDetector.NULL));
+                TFile target = new TFile(artifactDir, sourceFile.getName(), TArchiveDetector.NULL);
+                if (checksums) {
+                    checksumsByFile.put(filePath, copyFileWithChecksum(new FileInputStream(sourceFile), target));
+                } else {
+                    copyFile(new FileInputStream(sourceFile), target);
+                }
             }
         }
+        return checksumsByFile;
+    }
+
+    private void addManifest(String packagePath, String manifestContent) {
+        TFile entry = new TFile(packagePath + separator + DEPLOYIT_MANIFEST_XML);
+        try (OutputStream os = new TFileOutputStream(entry)) {
+            os.write(manifestContent.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeIOException(e);
+        }
     }
 
     private void addManifest(String packagePath) throws FileNotFoundException {
@@ -101,6 +147,56 @@ public class DARPackageUtil implements Callable<String, IOException> {
         }
     }
 
+    /**
+     * Copies the file into the package and returns its SHA-1, computed from the same read.
+     */
+    private String copyFileWithChecksum(final InputStream sourceFile, TFile targetFile) {
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        copyFile(new DigestInputStream(sourceFile, sha1), targetFile);
+        return BaseEncoding.base16().lowerCase().encode(sha1.digest());
+    }
+
+    /**
+     * Adds a {@code checksum} element to every manifest entry whose {@code file} has a checksum and that does not
+     * declare one already.
+     */
+    String addChecksums(String manifestContent, Map<String, String> checksumsByFile) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            Document document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(manifestContent)));
+            NodeList elements = document.getElementsByTagName("*");
+            for (int i = 0; i < elements.getLength(); i++) {
+                Element element = (Element) elements.item(i);
+                String checksum = checksumsByFile.get(element.getAttribute("file"));
+                if (checksum != null && !hasChildElement(element, "checksum")) {
+                    Element checksumElement = document.createElement("checksum");
+                    checksumElement.setTextContent(checksum);
+                    element.appendChild(checksumElement);
+                }
+            }
+            StringWriter writer = new StringWriter();
+            TransformerFactory.newInstance().newTransformer().transform(new DOMSource(document), new StreamResult(writer));
+            return writer.toString();
+        } catch (SAXException | IOException | ParserConfigurationException | TransformerException e) {
+            throw new IllegalArgumentException("Exception Occured while adding checksums to deployit-manifest", e);
+        }
+    }
+
+    private static boolean hasChildElement(Element element, String name) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element && name.equals(child.getNodeName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     List<String> filterFiles(String manifestContent) {
         final List<String> files = new ArrayList<>();
         try {
@@ -1,11 +1,17 @@
 package com.xebialabs.deployit.ci.workflow;
 
 import com.google.inject.Inject;
+import com.google.common.base.Splitter;
 import com.xebialabs.deployit.ci.DeployitNotifier;
+import com.xebialabs.deployit.ci.DeployitPluginException;
 import com.xebialabs.deployit.ci.JenkinsDeploymentOptions;
 import com.xebialabs.deployit.ci.RepositoryUtils;
 import com.xebialabs.deployit.ci.VersionKind;
+import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
 import com.xebialabs.deployit.ci.server.DeployitServer;
+import com.xebialabs.deployit.ci.server.DeployitServerFactory;
+import com.xebialabs.deployit.ci.server.DeploymentResult;
+import com.xebialabs.deployit.ci.util.ActionUtils;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
 
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
@@ -22,6 +28,10 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.ListBoxModel;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
 
 public class XLDeployDeployStep extends AbstractStepImpl {
     public final String serverCredentials;
@@ -30,6 +40,9 @@ public class XLDeployDeployStep extends AbstractStepImpl {
     public String overrideCredentialId;
     public Boolean rollbackOnError;
     public Boolean failOnArchiveFailure;
+    public int maxConcurrentDeployments = DEFAULT_MAX_CONCURRENT_DEPLOYMENTS;
+
+    private static final int DEFAULT_MAX_CONCURRENT_DEPLOYMENTS = 4;
 
     @DataBoundConstructor
     public XLDeployDeployStep(String serverCredentials, String packageId,
@@ -60,6 +73,33 @@ public class XLDeployDeployStep extends AbstractStepImpl {
         }
     }
 
+    @DataBoundSetter
+    public void setMaxConcurrentDeployments(int maxConcurrentDeployments) {
+        this.maxConcurrentDeployments = maxConcurrentDeployments > 0 ? maxConcurrentDeployments : DEFAULT_MAX_CONCURRENT_DEPLOYMENTS;
+    }
+
+    /**
+     * Splits a comma separated list of environment IDs. Entries containing the XL Deploy '%' wildcard are
+     * resolved against the repository.
+     */
+    static List<String> resolveEnvironments(String environmentIds, DeployitServer deployitServer) {
+        List<String> environments = new ArrayList<String>();
+        for (String environmentId : Splitter.on(',').trimResults().omitEmptyStrings().split(environmentIds)) {
+            if (!environmentId.contains("%")) {
+                environments.add(environmentId);
+                continue;
+            }
+            Pattern idPattern = Pattern.compile(Pattern.quote(environmentId).replace("%", "\\E.*\\Q"));
+            String namePattern = DeployitServerFactory.getNameFromId(environmentId);
+            for (String candidate : deployitServer.search(DeployitDescriptorRegistry.UDM_ENVIRONMENT, namePattern)) {
+                if (idPattern.matcher(candidate).matches() && !environments.contains(candidate)) {
+                    environments.add(candidate);
+                }
+            }
+        }
+        return environments;
+    }
+
     @Extension
     public static final class XLDeployDeployStepDescriptor extends AbstractStepDescriptorImpl {
 
@@ -120,7 +160,43 @@ public class XLDeployDeployStep extends AbstractStepImpl {
             Job<?,?> job = this.run.getParent();
             DeployitServer deployitServer = RepositoryUtils.getDeployitServerFromCredentialsId(
                     step.serverCredentials, step.overrideCredentialId, job);
-            deployitServer.deploy(resolvedPackageId,resolvedEnvironmentId,deploymentOptions,deploymentListener);
+            List<String> packageIds = Splitter.on(',').trimResults().omitEmptyStrings().splitToList(resolvedPackageId);
+            if (packageIds.isEmpty()) {
+                throw new DeployitPluginException("No package specified");
+            }
+            List<String> environments = resolveEnvironments(resolvedEnvironmentId, deployitServer);
+            if (environments.isEmpty()) {
+                throw new DeployitPluginException(String.format("No environments found matching '%s'", resolvedEnvironmentId));
+            }
+            if (environments.size() == 1) {
+                try {
+                    if (packageIds.size() == 1) {
+                        deployitServer.deploy(packageIds.get(0), environments.get(0), deploymentOptions, deploymentListener);
+                    } else {
+                        deployitServer.deploy(packageIds, environments.get(0), deploymentOptions, deploymentListener);
+                    }
+                } finally {
+                    ActionUtils.addTimingAction(this.run, deploymentListener.getTimer());
+                }
+                return null;
+            }
+
+            List<DeploymentResult> results;
+            try {
+                results = deployitServer.deploy(packageIds, environments, step.maxConcurrentDeployments, deploymentOptions, deploymentListener);
+            } finally {
+                ActionUtils.addTimingAction(this.run, deploymentListener.getTimer());
+            }
+            int failures = 0;
+            for (DeploymentResult result : results) {
+                deploymentListener.info(result.toString());
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+            }
+            if (failures > 0) {
+                throw new DeployitPluginException(String.format("Deployment of %s failed on %d of %d environments", resolvedPackageId, failures, results.size()));
+            }
             return null;
         }
     }
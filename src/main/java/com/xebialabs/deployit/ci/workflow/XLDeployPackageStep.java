@@ -1,10 +1,13 @@
 package com.xebialabs.deployit.ci.workflow;
 
 import com.google.inject.Inject;
+import com.xebialabs.deployit.ci.util.ActionUtils;
+import com.xebialabs.deployit.ci.util.PhaseTimer;
 import com.sun.istack.NotNull;
 import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
+import hudson.model.Run;
 import hudson.model.TaskListener;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
@@ -18,6 +21,7 @@ public class XLDeployPackageStep extends AbstractStepImpl {
     public final String darPath;
     public final String manifestPath;
     public final String artifactsPath;
+    public boolean checksums;
 
     @DataBoundConstructor
     public XLDeployPackageStep(String artifactsPath, String manifestPath, String darPath) {
@@ -26,6 +30,11 @@ public class XLDeployPackageStep extends AbstractStepImpl {
         this.artifactsPath = artifactsPath;
     }
 
+    @DataBoundSetter
+    public void setChecksums(boolean checksums) {
+        this.checksums = checksums;
+    }
+
     @Override
     public XLDeployPackageStepDescriptor getDescriptor() {
         return (XLDeployPackageStepDescriptor) super.getDescriptor();
@@ -64,10 +73,20 @@ public class XLDeployPackageStep extends AbstractStepImpl {
         @StepContextParameter
         private transient FilePath ws;
 
+        @StepContextParameter
+        private transient Run<?,?> run;
+
         @Override
         protected Void run() throws Exception {
             DARPackageUtil packageUtil = new DARPackageUtil(step.artifactsPath, step.manifestPath, step.darPath, envVars);
-            String packagePath =  ws.getChannel().call(packageUtil);
+            packageUtil.setChecksums(step.checksums);
+            PhaseTimer timer = new PhaseTimer();
+            String packagePath;
+            try (PhaseTimer.Split ignored = timer.start("package.remote", step.darPath)) {
+                packagePath = ws.getChannel().call(packageUtil);
+            } finally {
+                ActionUtils.addTimingAction(this.run, timer);
+            }
             listener.getLogger().println("XL Deploy package created : " + packagePath);
             return null;
         }
@@ -1,13 +1,16 @@
 package com.xebialabs.deployit.ci.workflow;
 
 import com.google.inject.Inject;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.xebialabs.deployit.ci.ArtifactView;
+import com.xebialabs.deployit.ci.DeployitPluginException;
 import com.xebialabs.deployit.ci.RemoteAwareLocation;
 import com.xebialabs.deployit.ci.RepositoryUtils;
 import com.xebialabs.deployit.ci.DeployitNotifier.DeployitDescriptor;
 import com.xebialabs.deployit.ci.server.DeployitServer;
 import com.xebialabs.deployit.ci.util.ActionUtils;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
+import com.xebialabs.deployit.ci.util.PhaseTimer;
 
 import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
@@ -25,11 +28,24 @@ import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.util.ListBoxModel;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+
 public class XLDeployPublishStep extends AbstractStepImpl {
 
     public final String serverCredentials;
     public String overrideCredentialId;
     public final String darPath;
+    public int maxConcurrentUploads = DEFAULT_MAX_CONCURRENT_UPLOADS;
+
+    private static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
 
     @DataBoundConstructor
     public XLDeployPublishStep(String darPath, String serverCredentials) {
@@ -42,6 +58,62 @@ public class XLDeployPublishStep extends AbstractStepImpl {
         this.overrideCredentialId = overrideCredentialId;
     }
 
+    @DataBoundSetter
+    public void setMaxConcurrentUploads(int maxConcurrentUploads) {
+        this.maxConcurrentUploads = maxConcurrentUploads > 0 ? maxConcurrentUploads : DEFAULT_MAX_CONCURRENT_UPLOADS;
+    }
+
+    /**
+     * Imports one package and records the imported package on the build.
+     */
+    interface PackagePublisher {
+        ConfigurationItem publish(String path);
+
+        void published(ConfigurationItem deploymentPackage);
+    }
+
+    /**
+     * Publishes the packages with at most maxConcurrentUploads at a time. Every imported package is recorded, also
+     * when others failed; the failures are reported together afterwards.
+     */
+    static void publishAll(List<String> paths, int maxConcurrentUploads, final PackagePublisher publisher,
+                           JenkinsDeploymentListener deploymentListener) throws InterruptedException {
+        int threads = Math.min(maxConcurrentUploads, paths.size());
+        deploymentListener.info(format("Publishing %d packages, at most %d at a time", paths.size(), threads));
+        // worker threads need the same context classloader as the caller to talk to XL Deploy
+        final ClassLoader callerClassLoader = Thread.currentThread().getContextClassLoader();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("xld-publish-%d").setDaemon(true).build());
+        List<Future<ConfigurationItem>> futures = new ArrayList<Future<ConfigurationItem>>();
+        try {
+            for (final String path : paths) {
+                futures.add(executor.submit(new Callable<ConfigurationItem>() {
+                    @Override
+                    public ConfigurationItem call() {
+                        Thread.currentThread().setContextClassLoader(callerClassLoader);
+                        return publisher.publish(path);
+                    }
+                }));
+            }
+            List<String> failures = new ArrayList<String>();
+            Throwable firstFailure = null;
+            for (int i = 0; i < paths.size(); i++) {
+                try {
+                    publisher.published(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    deploymentListener.error(format("Publishing %s failed: %s", paths.get(i), e.getCause()));
+                    failures.add(paths.get(i));
+                    firstFailure = firstFailure == null ? e.getCause() : firstFailure;
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new DeployitPluginException(format("Publishing failed for %s", failures), firstFailure);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Extension
     public static final class XLDeployPublishStepDescriptor extends AbstractStepDescriptorImpl {
 
@@ -92,22 +164,43 @@ public class XLDeployPublishStep extends AbstractStepImpl {
 
         @Override
         protected Void run() throws Exception {
-            JenkinsDeploymentListener deploymentListener = new JenkinsDeploymentListener(listener, false);
-            final String path = ArtifactView.findFilePathFromPattern(envVars.expand(step.darPath), ws, deploymentListener);
-            RemoteAwareLocation location = getRemoteAwareLocation(path);
+            final JenkinsDeploymentListener deploymentListener = new JenkinsDeploymentListener(listener, false);
+            List<String> paths = ArtifactView.findFilePathsFromPattern(envVars.expand(step.darPath), ws, deploymentListener);
             try {
                 Job<?,?> job = this.run.getParent();
-                DeployitServer deployitServer = RepositoryUtils.getDeployitServerFromCredentialsId(step.serverCredentials, step.overrideCredentialId, job);
+                final DeployitServer deployitServer = RepositoryUtils.getDeployitServerFromCredentialsId(step.serverCredentials, step.overrideCredentialId, job);
+                if (paths.size() == 1) {
+                    ActionUtils.addPublishAction(this.run, deployitServer.getBooterConfig(), publish(deployitServer, paths.get(0), deploymentListener));
+                    return null;
+                }
 
-                ConfigurationItem importedPackage = deployitServer.importPackage(location.getDarFileLocation(ws, deploymentListener, envVars));
-                ActionUtils.addPublishAction(this.run, deployitServer.getBooterConfig(), importedPackage);
+                publishAll(paths, step.maxConcurrentUploads, new PackagePublisher() {
+                    @Override
+                    public ConfigurationItem publish(String path) {
+                        return XLDeployPublishExecution.this.publish(deployitServer, path, deploymentListener);
+                    }
+
+                    @Override
+                    public void published(ConfigurationItem deploymentPackage) {
+                        ActionUtils.addPublishAction(run, deployitServer.getBooterConfig(), deploymentPackage);
+                    }
+                }, deploymentListener);
             } finally {
-                location.cleanup();
+                ActionUtils.addTimingAction(this.run, deploymentListener.getTimer());
             }
 
             return null;
         }
 
+        private ConfigurationItem publish(DeployitServer deployitServer, String path, JenkinsDeploymentListener deploymentListener) {
+            RemoteAwareLocation location = getRemoteAwareLocation(path);
+            try (PhaseTimer.Split ignored = deploymentListener.getTimer().start("import", path)) {
+                return deployitServer.importPackage(location.getDarFileLocation(ws, deploymentListener, envVars), deploymentListener);
+            } finally {
+                location.cleanup();
+            }
+        }
+
         private RemoteAwareLocation getRemoteAwareLocation(final String path) {
             return new RemoteAwareLocation() {
                 @Override
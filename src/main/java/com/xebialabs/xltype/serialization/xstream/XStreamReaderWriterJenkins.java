@@ -25,19 +25,25 @@ package com.xebialabs.xltype.serialization.xstream;
 
 import hudson.PluginFirstClassLoader;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
@@ -48,14 +54,16 @@ import org.jboss.resteasy.util.Types;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ImmutableSet;
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.reflection.ReflectionConverter;
 import com.thoughtworks.xstream.core.MapBackedDataHolder;
+import com.thoughtworks.xstream.io.xml.CompactWriter;
 import com.thoughtworks.xstream.io.xml.XmlFriendlyNameCoder;
 import com.thoughtworks.xstream.io.xml.XppDriver;
 
@@ -75,9 +83,17 @@ import nl.javadude.scannit.Scannit;
 @Produces({"application/*+xml", "text/*+xml"})
 @Consumes({"application/*+xml", "text/*+xml"})
 public class XStreamReaderWriterJenkins implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
-    public static final XppDriver HIERARCHICAL_STREAM_DRIVER = new XppDriver(new XmlFriendlyNameCoder("_-", "_"));
+    private static final XmlFriendlyNameCoder NAME_CODER = new XmlFriendlyNameCoder("_-", "_");
+    public static final XppDriver HIERARCHICAL_STREAM_DRIVER = new XppDriver(NAME_CODER);
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    /** Opt-in: compress request bodies. Only enable when the XL Deploy server (or a proxy in front of it) accepts gzip encoded requests. */
+    private static final boolean GZIP_REQUESTS = Boolean.getBoolean(XStreamReaderWriterJenkins.class.getName() + ".gzipRequests");
     private static final XStream xStream = new XStreamWithoutReflectionConverter(HIERARCHICAL_STREAM_DRIVER);
-    private static final AtomicReference<List<Converter>> CONVERTERS = new AtomicReference<List<Converter>>(Lists.<Converter>newArrayList());
+    private static final List<Converter> CONVERTERS = new CopyOnWriteArrayList<Converter>();
+    private static final ConcurrentMap<Class<?>, Boolean> CAN_CONVERT = new ConcurrentHashMap<Class<?>, Boolean>();
+    private static final Set<Class<?>> DEFAULT_TYPES = ImmutableSet.<Class<?>>of(String.class, boolean.class, Boolean.class, int.class, Integer.class);
+    private static final Object INIT_LOCK = new Object();
+    private static boolean convertersScanned;
 
     public XStreamReaderWriterJenkins() {
         logger.debug("Created XStreamReaderWriterJenkins");
@@ -85,12 +101,18 @@ public class XStreamReaderWriterJenkins implements MessageBodyReader<Object>, Me
     }
 
     protected void init() {
-        xStream.allowTypes(new Class[] {
-                Deployment.class , ConfigurationItemId.class
-        });
-        Collection<Converter> converters = allConverters();
-        for (Converter converter : converters) {
-            registerConverter(converter);
+        // the classpath scan and converter registration only need to happen once for this (static) XStream instance
+        synchronized (INIT_LOCK) {
+            if (!convertersScanned) {
+                xStream.allowTypes(new Class[] {
+                        Deployment.class , ConfigurationItemId.class
+                });
+                Collection<Converter> converters = allConverters();
+                for (Converter converter : converters) {
+                    registerConverter(converter);
+                }
+                convertersScanned = true;
+            }
         }
         final Thread currentThread = Thread.currentThread();
         final ClassLoader tccl = currentThread.getContextClassLoader();
@@ -101,11 +123,18 @@ public class XStreamReaderWriterJenkins implements MessageBodyReader<Object>, Me
         }
     }
 
-    public static void registerConverter(Converter converter) {
+    public static synchronized void registerConverter(Converter converter) {
+        for (Converter registered : CONVERTERS) {
+            if (registered.getClass() == converter.getClass()) {
+                logger.debug("Converter {} already registered", converter.getClass().getName());
+                return;
+            }
+        }
         xStream.registerConverter(converter);
         XStreamProvider annotation = converter.getClass().getAnnotation(XStreamProvider.class);
         xStream.aliasType(annotation.tagName(), annotation.readable());
-        CONVERTERS.get().add(converter);
+        CONVERTERS.add(converter);
+        CAN_CONVERT.clear();
     }
 
     /**
@@ -171,13 +200,20 @@ public class XStreamReaderWriterJenkins implements MessageBodyReader<Object>, Me
     }
 
     private boolean canBeConverted(Class type) {
-        for (Converter converter : CONVERTERS.get()) {
+        Boolean cached = CAN_CONVERT.get(type);
+        if (cached != null) {
+            return cached;
+        }
+        boolean canConvert = false;
+        for (Converter converter : CONVERTERS) {
             if (converter.canConvert(type)) {
-                return true;
+                canConvert = true;
+                break;
             }
         }
         // Default types
-        boolean canConvert = Arrays.asList(String.class, boolean.class, Boolean.class, int.class, Integer.class).contains(type);
+        canConvert = canConvert || DEFAULT_TYPES.contains(type);
+        CAN_CONVERT.put(type, canConvert);
         return canConvert;
     }
 
@@ -188,6 +224,13 @@ public class XStreamReaderWriterJenkins implements MessageBodyReader<Object>, Me
     }
 
     private Object read(InputStream entityStream, Class<Object> type, String booterConfigKey) {
+        return unmarshal(entityStream, booterConfigKey);
+    }
+
+    /**
+     * Unmarshals a response body that was not read through resteasy, e.g. the result of a package upload.
+     */
+    public static Object unmarshal(InputStream entityStream, String booterConfigKey) {
         MapBackedDataHolder dataHolder = new MapBackedDataHolder();
         dataHolder.put("BOOTER_CONFIG", booterConfigKey);
         return xStream.unmarshal(HIERARCHICAL_STREAM_DRIVER.createReader(entityStream), null, dataHolder);
@@ -209,7 +252,18 @@ public class XStreamReaderWriterJenkins implements MessageBodyReader<Object>, Me
     @Override
     public void writeTo(Object o, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
         logger.trace("Writing {}", genericType);
-        xStream.toXML(o, new OutputStreamWriter(entityStream, "UTF-8"));
+        OutputStream out = entityStream;
+        GZIPOutputStream gzip = null;
+        if (GZIP_REQUESTS) {
+            httpHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+            out = gzip = new GZIPOutputStream(entityStream, WRITE_BUFFER_SIZE);
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8), WRITE_BUFFER_SIZE);
+        xStream.marshal(o, new CompactWriter(writer, NAME_CODER));
+        writer.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
     }
 
     public static XStream getConfiguredXStream() {
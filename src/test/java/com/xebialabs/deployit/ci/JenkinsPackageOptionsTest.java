@@ -0,0 +1,136 @@
+package com.xebialabs.deployit.ci;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
+import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
+import com.xebialabs.deployit.plugin.api.udm.Application;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.Deployable;
+import com.xebialabs.deployit.plugin.api.udm.DeploymentPackage;
+
+import hudson.EnvVars;
+import hudson.util.StreamTaskListener;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+public class JenkinsPackageOptionsTest {
+
+    private final DeployitDescriptorRegistry registry = mock(DeployitDescriptorRegistry.class);
+    private final DeploymentPackage deploymentPackage = mock(DeploymentPackage.class);
+    private final JenkinsDeploymentListener listener = new JenkinsDeploymentListener(new StreamTaskListener(new ByteArrayOutputStream()), false);
+    // the configuration items created per name
+    private final Map<String, ConfigurationItem> items = new ConcurrentHashMap<String, ConfigurationItem>();
+    // the threads the configuration items were created on
+    private final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @Before
+    public void setUp() {
+        when(registry.newInstance(Application.class, "app")).thenReturn(mock(Application.class));
+        when(registry.newInstance(DeploymentPackage.class, "1.0")).thenReturn(deploymentPackage);
+        when(deploymentPackage.getDeployables()).thenReturn(Collections.<Deployable>emptySet());
+        when(registry.newInstance(anyString(), anyString())).thenAnswer(new Answer<ConfigurationItem>() {
+            @Override
+            public ConfigurationItem answer(InvocationOnMock invocation) {
+                ConfigurationItem item = mock(ConfigurationItem.class, withSettings().extraInterfaces(Deployable.class));
+                items.put((String) invocation.getArguments()[1], item);
+                threads.add(Thread.currentThread().getName());
+                return item;
+            }
+        });
+    }
+
+    @Test
+    public void shouldLinkEmbeddedsListedBeforeTheirParents() {
+        JenkinsPackageOptions options = new JenkinsPackageOptions(Arrays.<DeployableView>asList(
+                new EmbeddedView("test.Config", "config", "web/context", null),
+                new EmbeddedView("test.Context", "context", "web", null),
+                new ResourceView("test.Web", "web", null, null)));
+
+        toDeploymentPackage(options);
+
+        verify(deploymentPackage).addDeployable((Deployable) items.get("web"));
+        InOrder linking = inOrder(registry);
+        linking.verify(registry).addEmbedded(items.get("web"), items.get("context"));
+        linking.verify(registry).addEmbedded(items.get("context"), items.get("config"));
+    }
+
+    @Test
+    public void shouldLinkEmbeddedsListedAfterTheirParents() {
+        JenkinsPackageOptions options = new JenkinsPackageOptions(Arrays.<DeployableView>asList(
+                new ResourceView("test.Web", "web", null, null),
+                new EmbeddedView("test.Context", "context", "web", null),
+                new EmbeddedView("test.Config", "config", "web/context", null)));
+
+        toDeploymentPackage(options);
+
+        InOrder linking = inOrder(registry);
+        linking.verify(registry).addEmbedded(items.get("web"), items.get("context"));
+        linking.verify(registry).addEmbedded(items.get("context"), items.get("config"));
+    }
+
+    @Test
+    public void shouldFailOnEmbeddedWithoutParentInThePackage() {
+        JenkinsPackageOptions options = new JenkinsPackageOptions(Arrays.<DeployableView>asList(
+                new ResourceView("test.Web", "web", null, null),
+                new EmbeddedView("test.Config", "config", "web/missing", null)));
+
+        try {
+            toDeploymentPackage(options);
+            fail("Expected the missing parent to be reported");
+        } catch (DeployitPluginException expected) {
+        }
+        verify(registry, never()).addEmbedded(any(ConfigurationItem.class), eq(items.get("config")));
+    }
+
+    @Test
+    public void shouldResolveMoreDeployablesThanThreadsInOrder() {
+        List<DeployableView> views = new ArrayList<DeployableView>();
+        views.add(new EmbeddedView("test.Config", "config", "web5", null));
+        int count = JenkinsPackageOptions.PARALLELISM * 2 + 3;
+        for (int i = 0; i < count; i++) {
+            views.add(new ResourceView("test.Web", "web" + i, null, null));
+        }
+
+        toDeploymentPackage(new JenkinsPackageOptions(views));
+
+        InOrder adding = inOrder(deploymentPackage);
+        for (int i = 0; i < count; i++) {
+            adding.verify(deploymentPackage).addDeployable((Deployable) items.get("web" + i));
+        }
+        verify(registry).addEmbedded(items.get("web5"), items.get("config"));
+        for (String thread : threads) {
+            if (!thread.equals(Thread.currentThread().getName())) {
+                assertThat(thread, startsWith("xld-deployables-"));
+            }
+        }
+    }
+
+    private DeploymentPackage toDeploymentPackage(JenkinsPackageOptions options) {
+        return options.toDeploymentPackage("app", "1.0", null, registry, null, new EnvVars(), listener);
+    }
+}
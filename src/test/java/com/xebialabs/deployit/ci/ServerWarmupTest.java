@@ -0,0 +1,70 @@
+package com.xebialabs.deployit.ci;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
+import com.xebialabs.deployit.ci.server.DeployitServer;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServerWarmupTest {
+
+    @Test
+    public void shouldWarmUpEveryCredentialDespiteFailures() {
+        final DeployitDescriptorRegistry first = mock(DeployitDescriptorRegistry.class);
+        final DeployitDescriptorRegistry third = mock(DeployitDescriptorRegistry.class);
+
+        ServerWarmup.warmUp(Arrays.asList(credential("first"), credential("second"), credential("third")), new ServerWarmup.ServerLookup() {
+            @Override
+            public DeployitServer getDeployitServer(Credential credential) {
+                if ("second".equals(credential.getName())) {
+                    throw new IllegalStateException("Connection refused");
+                }
+                return serverWith("first".equals(credential.getName()) ? first : third);
+            }
+        }, 10);
+
+        verify(first).getDescriptors();
+        verify(third).getDescriptors();
+    }
+
+    @Test
+    public void shouldCancelWarmUpsStillRunningAfterTheTimeout() throws InterruptedException {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        ServerWarmup.warmUp(Arrays.asList(credential("hanging")), new ServerWarmup.ServerLookup() {
+            @Override
+            public DeployitServer getDeployitServer(Credential credential) {
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        }, 1);
+
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), lessThan(5L));
+        assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+    }
+
+    private static Credential credential(String name) {
+        return new Credential(name, "admin", null, null, null, null, false);
+    }
+
+    private static DeployitServer serverWith(DeployitDescriptorRegistry registry) {
+        DeployitServer server = mock(DeployitServer.class);
+        when(server.getDescriptorRegistry()).thenReturn(registry);
+        return server;
+    }
+}
@@ -0,0 +1,42 @@
+package com.xebialabs.deployit.ci.Util;
+
+import com.xebialabs.deployit.ci.util.EnvTemplate;
+import hudson.EnvVars;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class EnvTemplateTest {
+
+    private final EnvVars envVars = new EnvVars("BUILD_NUMBER", "42", "JOB_NAME", "app", "app.version", "1.0", "DOLLAR", "$JOB_NAME");
+
+    @Test
+    public void shouldExpandLikeEnvVars() {
+        String[] sources = {
+                "", "plain", "$BUILD_NUMBER", "${BUILD_NUMBER}", "v${app.version}-$BUILD_NUMBER",
+                "$UNDEFINED/${UNDEFINED}", "$$BUILD_NUMBER", "price: $$", "$", "trailing $", "${", "$DOLLAR",
+                "target/${JOB_NAME}-${BUILD_NUMBER}.dar", "$app.version", "$build_number"
+        };
+        for (String source : sources) {
+            assertThat(source, EnvTemplate.compile(source).expand(envVars), is(envVars.expand(source)));
+        }
+    }
+
+    @Test
+    public void shouldReturnSourceWithoutVariables() {
+        String source = "no variables here";
+        assertThat(EnvTemplate.compile(source).hasVariables(), is(false));
+        assertThat(EnvTemplate.compile(source).expand(envVars), sameInstance(source));
+        assertThat(EnvTemplate.compile(null).expand(envVars), nullValue());
+    }
+
+    @Test
+    public void shouldReuseTemplateOnlyForSameSource() {
+        EnvTemplate template = EnvTemplate.compile("$JOB_NAME");
+        assertThat(EnvTemplate.reuse(template, "$JOB_NAME"), sameInstance(template));
+        assertThat(EnvTemplate.reuse(template, "$BUILD_NUMBER").expand(envVars), is("42"));
+    }
+}
@@ -0,0 +1,96 @@
+package com.xebialabs.deployit.ci.Util;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import com.xebialabs.deployit.ci.util.XLDeployMetrics;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class XLDeployMetricsTest {
+
+    // the registry is a singleton, every test uses its own metric names
+    private final XLDeployMetrics metrics = XLDeployMetrics.getInstance();
+
+    @Test
+    public void shouldWriteCountersAndGaugesInPrometheusFormat() throws IOException {
+        metrics.increment("test_requests_total", 2, "server", "http://xld:4516", "method", "say \"hi\"");
+        metrics.increment("test_requests_total", "server", "http://xld:4516", "method", "say \"hi\"");
+        metrics.gauge("test_active", 3);
+        metrics.gauge("test_active", -1);
+
+        String output = prometheus();
+
+        assertThat(output, containsString("# TYPE test_requests_total counter\n"
+                + "test_requests_total{server=\"http://xld:4516\",method=\"say \\\"hi\\\"\"} 3\n"));
+        assertThat(output, containsString("# TYPE test_active gauge\ntest_active 2\n"));
+    }
+
+    @Test
+    public void shouldWriteCumulativeHistogramBuckets() throws IOException {
+        XLDeployMetrics.Histogram histogram = metrics.histogram("test_latency_seconds", new long[]{10, 100}, "server", "a");
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.histogram("test_latency_seconds", new long[]{1}, "server", "a").observe(TimeUnit.SECONDS.toNanos(2));
+
+        String output = prometheus();
+
+        assertThat(output, containsString("# TYPE test_latency_seconds histogram\n"
+                + "test_latency_seconds_bucket{server=\"a\",le=\"0.01\"} 1\n"
+                + "test_latency_seconds_bucket{server=\"a\",le=\"0.1\"} 2\n"
+                + "test_latency_seconds_bucket{server=\"a\",le=\"+Inf\"} 3\n"
+                + "test_latency_seconds_sum{server=\"a\"} 2.055\n"
+                + "test_latency_seconds_count{server=\"a\"} 3\n"));
+        assertThat(output, not(containsString("test_latency_seconds_bucket{server=\"a\",le=\"0.001\"}")));
+    }
+
+    @Test
+    public void shouldExposeHistogramsAsJson() {
+        XLDeployMetrics.Histogram histogram = metrics.histogram("test_json_seconds", new long[]{10, 100}, "server", "b");
+        histogram.observe(TimeUnit.MILLISECONDS.toNanos(20));
+
+        JSONObject item = find(metrics.toJson().getJSONArray("histograms"), "test_json_seconds");
+
+        assertThat(item.getJSONObject("labels").getString("server"), is("b"));
+        assertThat(item.getLong("count"), is(1L));
+        assertThat(item.getLong("sumMillis"), is(20L));
+        assertThat(item.getJSONObject("bucketsMillis").getLong("10"), is(0L));
+        assertThat(item.getJSONObject("bucketsMillis").getLong("100"), is(1L));
+    }
+
+    @Test
+    public void shouldReturnSameHistogramForSameLabels() {
+        XLDeployMetrics.Histogram histogram = metrics.histogram("test_same_seconds", XLDeployMetrics.REQUEST_BUCKETS_MILLIS, "server", "c");
+        assertThat(metrics.histogram("test_same_seconds", XLDeployMetrics.REQUEST_BUCKETS_MILLIS, "server", "c") == histogram, is(true));
+        assertThat(find(metrics.toJson().getJSONArray("histograms"), "test_missing_seconds"), nullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnpairedLabels() {
+        metrics.increment("test_unpaired_total", "server");
+    }
+
+    private String prometheus() throws IOException {
+        StringWriter writer = new StringWriter();
+        metrics.writePrometheus(writer);
+        return writer.toString();
+    }
+
+    private static JSONObject find(JSONArray items, String name) {
+        for (int i = 0; i < items.size(); i++) {
+            if (name.equals(items.getJSONObject(i).getString("name"))) {
+                return items.getJSONObject(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package com.xebialabs.deployit.ci.dar;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+
+import com.xebialabs.deployit.booter.remote.RemoteDescriptor;
+import com.xebialabs.deployit.booter.remote.RemotePropertyDescriptor;
+import com.xebialabs.deployit.ci.DeployitPluginException;
+import com.xebialabs.deployit.plugin.api.reflect.Descriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyKind;
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DescriptorCodecTest {
+
+    private static final Predicate<String> TEST_CLASSES = Predicates.or(DescriptorCodec.DESCRIPTOR_CLASSES,
+            Predicates.in(ImmutableSet.of(Node.class.getName(), TimeUnit.class.getName())));
+
+    @Test
+    public void shouldRoundTripObjectGraph() {
+        Node parent = new Node("parent", 1);
+        Node child = new Node("child", -2);
+        child.parent = parent;
+        parent.children.add(child);
+        parent.properties.put("unit", TimeUnit.SECONDS);
+        parent.properties.put("limit", Long.MAX_VALUE);
+        parent.properties.put("ratio", 0.5d);
+        parent.properties.put("empty", null);
+        parent.tags = new String[]{"a", "b", "a"};
+        parent.fixed = Collections.singletonList("wrapped");
+
+        Node decoded = (Node) DescriptorCodec.decode(DescriptorCodec.encode(parent), TEST_CLASSES);
+
+        assertThat(decoded.name, is("parent"));
+        assertThat(decoded.weight, is(1));
+        assertThat(decoded.children.size(), is(1));
+        assertThat(decoded.children.get(0).name, is("child"));
+        assertThat(decoded.children.get(0).weight, is(-2));
+        assertThat(decoded.children.get(0).parent, sameInstance(decoded));
+        assertThat((TimeUnit) decoded.properties.get("unit"), is(TimeUnit.SECONDS));
+        assertThat((Long) decoded.properties.get("limit"), is(Long.MAX_VALUE));
+        assertThat((Double) decoded.properties.get("ratio"), is(0.5d));
+        assertThat(decoded.properties.get("empty"), nullValue());
+        assertThat(decoded.tags, is(new String[]{"a", "b", "a"}));
+        assertThat(decoded.fixed, contains("wrapped"));
+        assertThat(decoded.cached, nullValue());
+    }
+
+    @Test
+    public void shouldRoundTripRemoteDescriptors() {
+        RemotePropertyDescriptor port = new RemotePropertyDescriptor();
+        port.setName("port");
+        port.setFqn("test.Server.port");
+        port.setKind(PropertyKind.INTEGER);
+        port.setDefaultValue("8080");
+        RemotePropertyDescriptor secret = new RemotePropertyDescriptor();
+        secret.setName("secret");
+        secret.setFqn("test.Server.secret");
+        secret.setKind(PropertyKind.STRING);
+        secret.setHidden();
+        RemoteDescriptor server = new RemoteDescriptor();
+        server.setType(Type.valueOf("test.Server"));
+        server.setPropertyDescriptors(new ArrayList<PropertyDescriptor>(Arrays.<PropertyDescriptor>asList(port, secret)));
+        RemoteDescriptor database = new RemoteDescriptor();
+        database.setType(Type.valueOf("test.Database"));
+        database.setPropertyDescriptors(new ArrayList<PropertyDescriptor>());
+
+        Collection<Descriptor> decoded = DescriptorCodec.decodeDescriptors(
+                DescriptorCodec.encodeDescriptors(Arrays.<Descriptor>asList(server, database)));
+
+        assertThat(decoded.size(), is(2));
+        Descriptor decodedServer = decoded.iterator().next();
+        assertThat(decodedServer, instanceOf(RemoteDescriptor.class));
+        assertThat(decodedServer.getType().toString(), is("test.Server"));
+        assertThat(decodedServer.getPropertyDescriptors().size(), is(2));
+        PropertyDescriptor decodedPort = decodedServer.getPropertyDescriptor("port");
+        assertThat(decodedPort.getKind(), is(PropertyKind.INTEGER));
+        assertThat(decodedPort.getDefaultValue(), is((Object) "8080"));
+        assertThat(decodedPort.isHidden(), is(false));
+        assertThat(decodedServer.getPropertyDescriptor("secret").isHidden(), is(true));
+    }
+
+    @Test(expected = DeployitPluginException.class)
+    public void shouldRejectClassesOutsideTheAllowList() {
+        DescriptorCodec.decode(DescriptorCodec.encode(new Node("node", 1)));
+    }
+
+    @Test(expected = DeployitPluginException.class)
+    public void shouldRejectClassesOutsideTheAllowListInEmbeddedSerialization() {
+        // the singleton list is embedded as Java serialization, the node inside it must still be rejected
+        DescriptorCodec.decode(DescriptorCodec.encode(Collections.singletonList(new Node("node", 1))));
+    }
+
+    @Test
+    public void shouldOnlyAllowTheClassesOfDescriptorGraphs() {
+        assertThat(DescriptorCodec.DESCRIPTOR_CLASSES.apply(RemoteDescriptor.class.getName()), is(true));
+        assertThat(DescriptorCodec.DESCRIPTOR_CLASSES.apply("com.xebialabs.deployit.plugin.api.udm.Metadata$ConfigurationItemRoot"), is(true));
+        assertThat(DescriptorCodec.DESCRIPTOR_CLASSES.apply("com.xebialabs.deployit.booter.remote.DeployitCommunicator"), is(false));
+        assertThat(DescriptorCodec.DESCRIPTOR_CLASSES.apply("com.xebialabs.deployit.plugin.api.udm.base.BaseConfigurationItem"), is(false));
+        assertThat(DescriptorCodec.DESCRIPTOR_CLASSES.apply("com.xebialabs.deployit.plugin.api.reflect.TypeFactory"), is(false));
+    }
+
+    @Test(expected = DeployitPluginException.class)
+    public void shouldRejectTruncatedData() {
+        byte[] encoded = DescriptorCodec.encode(new ArrayList<String>(Collections.nCopies(10, "udm.Environment")));
+        DescriptorCodec.decode(Arrays.copyOf(encoded, encoded.length - 5));
+    }
+
+    @Test
+    public void shouldEncodeRepeatedStringsOnce() {
+        List<Node> nodes = new ArrayList<Node>();
+        for (int i = 0; i < 100; i++) {
+            nodes.add(new Node("udm.DeployableArtifact", i));
+        }
+        byte[] many = DescriptorCodec.encode(nodes);
+        byte[] one = DescriptorCodec.encode(new ArrayList<Node>(nodes.subList(0, 1)));
+
+        // every further node costs a few bytes of tags and varints, not the class, field and type names again
+        assertThat(many.length < one.length + 99 * 40, is(true));
+    }
+
+    static class Node implements Serializable {
+        String name;
+        int weight;
+        Node parent;
+        List<Node> children = new ArrayList<Node>();
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        String[] tags;
+        List<String> fixed;
+        transient Object cached = new Object();
+
+        Node(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+}
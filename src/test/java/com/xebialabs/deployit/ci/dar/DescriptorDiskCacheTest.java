@@ -0,0 +1,209 @@
+package com.xebialabs.deployit.ci.dar;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+import com.xebialabs.deployit.booter.remote.BooterConfig;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class DescriptorDiskCacheTest {
+
+    private static final KeyPair KEYS = generateKeyPair();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final BooterConfig booterConfig = BooterConfig.builder()
+            .withHost("xld-cache-test")
+            .withPort(4516)
+            .withCredentials("admin", "secret")
+            .build();
+    private final byte[] descriptors = randomContent(64 * 1024);
+    private byte[] signature;
+    private File dir;
+
+    @Before
+    public void setCacheDirectory() throws IOException, GeneralSecurityException {
+        dir = temporaryFolder.newFolder("descriptors");
+        System.setProperty(DescriptorDiskCache.DIR_PROPERTY, dir.getAbsolutePath());
+        signature = DescriptorDiskCache.sign(KEYS.getPrivate(), booterConfig, "v1", descriptors);
+    }
+
+    @After
+    public void clearCacheDirectory() {
+        System.clearProperty(DescriptorDiskCache.DIR_PROPERTY);
+    }
+
+    @Test
+    public void shouldLoadStoredDescriptors() {
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+
+        assertThat(DescriptorDiskCache.contains(booterConfig, "v1"), is(true));
+        assertArrayEquals(descriptors, DescriptorDiskCache.load(booterConfig, "v1", KEYS.getPublic()));
+        assertThat(DescriptorDiskCache.load(booterConfig, "v2", KEYS.getPublic()), nullValue());
+    }
+
+    @Test
+    public void shouldRejectFileSignedWithAnotherKey() {
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+
+        assertThat(DescriptorDiskCache.load(booterConfig, "v1", generateKeyPair().getPublic()), nullValue());
+    }
+
+    @Test
+    public void shouldNotStoreDescriptorsWithInvalidSignature() throws GeneralSecurityException {
+        byte[] forged = DescriptorDiskCache.sign(generateKeyPair().getPrivate(), booterConfig, "v1", descriptors);
+
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), forged, descriptors);
+
+        assertThat(cacheFileOrNull(), nullValue());
+    }
+
+    @Test
+    public void shouldNotLoadFileSignedForAnotherVersion() throws GeneralSecurityException, IOException {
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+        File v1 = cacheFile();
+        byte[] v2Signature = DescriptorDiskCache.sign(KEYS.getPrivate(), booterConfig, "v2", descriptors);
+        DescriptorDiskCache.store(booterConfig, "v2", KEYS.getPublic(), v2Signature, descriptors);
+        for (File file : dir.listFiles()) {
+            if (!file.equals(v1)) {
+                Files.copy(v1, file);
+            }
+        }
+
+        assertThat(DescriptorDiskCache.load(booterConfig, "v2", KEYS.getPublic()), nullValue());
+    }
+
+    @Test
+    public void shouldRejectTamperedFile() throws IOException {
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+        File file = cacheFile();
+        byte[] content = Files.toByteArray(file);
+        content[content.length - 1] ^= 1;
+        Files.write(content, file);
+
+        assertThat(DescriptorDiskCache.load(booterConfig, "v1", KEYS.getPublic()), nullValue());
+    }
+
+    @Test
+    public void shouldRejectTruncatedFile() throws IOException {
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+        File file = cacheFile();
+        byte[] content = Files.toByteArray(file);
+
+        Files.write(Arrays.copyOf(content, content.length / 2), file);
+        assertThat(DescriptorDiskCache.load(booterConfig, "v1", KEYS.getPublic()), nullValue());
+
+        Files.write(Arrays.copyOf(content, 10), file);
+        assertThat(DescriptorDiskCache.load(booterConfig, "v1", KEYS.getPublic()), nullValue());
+    }
+
+    @Test
+    public void shouldReplaceFileThatDoesNotVerify() throws IOException {
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+        Files.write(randomContent(100), cacheFile());
+
+        DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+
+        assertArrayEquals(descriptors, DescriptorDiskCache.load(booterConfig, "v1", KEYS.getPublic()));
+    }
+
+    @Test
+    public void shouldNeverReadPartiallyWrittenFile() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int n = 0; n < 50; n++) {
+                            File file = DescriptorDiskCacheTest.this.cacheFileOrNull();
+                            if (file != null) {
+                                file.delete();
+                            }
+                            DescriptorDiskCache.store(booterConfig, "v1", KEYS.getPublic(), signature, descriptors);
+                        }
+                        return null;
+                    }
+                }));
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        for (int n = 0; n < 200; n++) {
+                            byte[] loaded = DescriptorDiskCache.load(booterConfig, "v1", KEYS.getPublic());
+                            if (loaded != null) {
+                                assertArrayEquals(descriptors, loaded);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertArrayEquals(descriptors, DescriptorDiskCache.load(booterConfig, "v1", KEYS.getPublic()));
+    }
+
+    private File cacheFile() {
+        File file = cacheFileOrNull();
+        assertThat(file == null, is(false));
+        return file;
+    }
+
+    private File cacheFileOrNull() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".descriptors")) {
+                    return file;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static KeyPair generateKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] randomContent(int length) {
+        byte[] content = new byte[length];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+}
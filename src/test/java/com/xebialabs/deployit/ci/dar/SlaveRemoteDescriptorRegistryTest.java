@@ -0,0 +1,83 @@
+package com.xebialabs.deployit.ci.dar;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SlaveRemoteDescriptorRegistryTest {
+
+    private final SlaveRemoteDescriptorRegistry.RegistryCache<String> cache = new SlaveRemoteDescriptorRegistry.RegistryCache<String>(2);
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedRegistry() {
+        cache.put("a", "registry a");
+        cache.put("b", "registry b");
+        cache.get("a");
+
+        cache.put("c", "registry c");
+
+        assertThat(cache.contains("a"), is(true));
+        assertThat(cache.contains("b"), is(false));
+        assertThat(cache.contains("c"), is(true));
+    }
+
+    @Test
+    public void shouldNotEvictLeasedRegistry() {
+        cache.acquire("a");
+        cache.put("a", "registry a");
+        cache.put("b", "registry b");
+
+        cache.put("c", "registry c");
+
+        assertThat(cache.contains("a"), is(true));
+        assertThat(cache.contains("b"), is(false));
+        assertThat(cache.contains("c"), is(true));
+
+        cache.release("a");
+        cache.put("d", "registry d");
+
+        assertThat(cache.contains("a"), is(false));
+        assertThat(cache.contains("c"), is(true));
+        assertThat(cache.contains("d"), is(true));
+    }
+
+    @Test
+    public void shouldProtectRegistryLeasedBeforeItIsPut() {
+        cache.put("a", "registry a");
+        cache.put("b", "registry b");
+        cache.acquire("c");
+
+        cache.put("c", "registry c");
+        cache.put("d", "registry d");
+
+        assertThat(cache.contains("c"), is(true));
+        assertThat(cache.contains("d"), is(true));
+        assertThat(cache.contains("a"), is(false));
+        assertThat(cache.contains("b"), is(false));
+    }
+
+    @Test
+    public void shouldHoldMoreThanMaximumWhileAllAreLeasedAndShrinkOnRelease() {
+        cache.acquire("a");
+        cache.acquire("b");
+        cache.acquire("c");
+        cache.put("a", "registry a");
+        cache.put("b", "registry b");
+        cache.put("c", "registry c");
+
+        assertThat(cache.contains("a"), is(true));
+        assertThat(cache.contains("b"), is(true));
+        assertThat(cache.contains("c"), is(true));
+
+        // a second lease on a keeps it after the first is released
+        cache.acquire("a");
+        cache.release("a");
+        assertThat(cache.contains("a"), is(true));
+
+        cache.release("b");
+        assertThat(cache.contains("b"), is(false));
+        assertThat(cache.contains("a"), is(true));
+        assertThat(cache.contains("c"), is(true));
+    }
+}
@@ -24,9 +24,12 @@
 package com.xebialabs.deployit.ci.server;
 
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import com.xebialabs.deployit.ci.DeployitPluginException;
 import com.xebialabs.deployit.ci.JenkinsDeploymentOptions;
 import com.xebialabs.deployit.ci.VersionKind;
 import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
@@ -36,10 +39,19 @@ import com.xebialabs.deployit.engine.api.TaskService;
 import com.xebialabs.deployit.engine.api.dto.Deployment;
 import com.xebialabs.deployit.engine.api.execution.TaskExecutionState;
 import com.xebialabs.deployit.engine.api.execution.TaskState;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
 
 import hudson.model.StreamBuildListener;
+import static com.google.common.collect.Lists.newArrayList;
 import static junit.framework.TestCase.fail;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DeployCommandTest {
@@ -77,6 +89,107 @@ public class DeployCommandTest {
         }
     }
 
+    @Test
+    public void shouldKeepResolvedDependenciesWhenDeployingSeveralPackages() {
+        DeploymentService deploymentService = mock(DeploymentService.class);
+        TaskService taskService = mock(TaskService.class);
+        RepositoryService repositoryService = mock(RepositoryService.class);
+        JenkinsDeploymentOptions jenkinsOptions = new JenkinsDeploymentOptions("Environments/Dev", VersionKind.Packaged, false, false, true, false, true);
+        JenkinsDeploymentListener jenkinsDeploymentListener = new JenkinsDeploymentListener(new StreamBuildListener(System.out, Charset.defaultCharset()), true);
+        DeployCommand deployCommand = new DeployCommand(deploymentService, taskService, repositoryService, jenkinsOptions, jenkinsDeploymentListener) {
+            @Override
+            void verifyPackageExistInRemoteRepository(String deploymentPackage) {
+            }
+        };
+
+        Deployment resolvedDependency = new Deployment();
+        Deployment first = new Deployment();
+        first.setRequiredDeployments(newArrayList(resolvedDependency));
+        Deployment second = new Deployment();
+        when(deploymentService.prepareInitial("Applications/A/1.0", "Environments/Dev")).thenReturn(first);
+        when(deploymentService.prepareInitial("Applications/B/2.0", "Environments/Dev")).thenReturn(second);
+        when(deploymentService.validate(first)).thenReturn(first);
+        when(deploymentService.createTask(first)).thenReturn("123");
+
+        TaskState taskState = mock(TaskState.class);
+        when(taskState.getState()).thenReturn(TaskExecutionState.PENDING);
+        when(taskService.getTask("123")).thenReturn(taskState);
+
+        deployCommand.deploy(Arrays.asList("Applications/A/1.0", "Applications/B/2.0"), "Environments/Dev");
+
+        ArgumentCaptor<Deployment> created = ArgumentCaptor.forClass(Deployment.class);
+        verify(deploymentService).createTask(created.capture());
+        assertThat(created.getValue().getRequiredDeployments(), contains(resolvedDependency, second));
+        verify(taskService).cancel("123");
+    }
+
+    @Test
+    public void shouldNotAddPackageThatIsAlreadyAResolvedDependency() {
+        DeploymentService deploymentService = mock(DeploymentService.class);
+        TaskService taskService = mock(TaskService.class);
+        DeployCommand deployCommand = newTestModeCommand(deploymentService, taskService);
+
+        Deployment resolvedDependency = deploymentOf("Applications/B/1.0");
+        Deployment first = deploymentOf("Applications/A/1.0");
+        first.setRequiredDeployments(newArrayList(resolvedDependency));
+        Deployment third = deploymentOf("Applications/C/1.0");
+        // C resolves B as well, the task must deploy it only once
+        third.setRequiredDeployments(newArrayList(deploymentOf("Applications/B/1.0")));
+        when(deploymentService.prepareInitial("Applications/A/1.0", "Environments/Dev")).thenReturn(first);
+        when(deploymentService.prepareInitial("Applications/C/1.0", "Environments/Dev")).thenReturn(third);
+        when(deploymentService.validate(first)).thenReturn(first);
+        when(deploymentService.createTask(first)).thenReturn("123");
+        TaskState taskState = mock(TaskState.class);
+        when(taskState.getState()).thenReturn(TaskExecutionState.PENDING);
+        when(taskService.getTask("123")).thenReturn(taskState);
+
+        deployCommand.deploy(Arrays.asList("Applications/A/1.0", "Applications/B/1.0", "Applications/C/1.0"), "Environments/Dev");
+
+        verify(deploymentService, never()).prepareInitial("Applications/B/1.0", "Environments/Dev");
+        ArgumentCaptor<Deployment> created = ArgumentCaptor.forClass(Deployment.class);
+        verify(deploymentService).createTask(created.capture());
+        assertThat(created.getValue().getRequiredDeployments(), contains(resolvedDependency, third));
+        assertThat(third.getRequiredDeployments(), empty());
+    }
+
+    @Test
+    public void shouldRejectOtherVersionOfAResolvedDependency() {
+        DeploymentService deploymentService = mock(DeploymentService.class);
+        DeployCommand deployCommand = newTestModeCommand(deploymentService, mock(TaskService.class));
+
+        Deployment first = deploymentOf("Applications/A/1.0");
+        first.setRequiredDeployments(newArrayList(deploymentOf("Applications/B/1.0")));
+        when(deploymentService.prepareInitial("Applications/A/1.0", "Environments/Dev")).thenReturn(first);
+
+        try {
+            deployCommand.deploy(Arrays.asList("Applications/A/1.0", "Applications/B/2.0"), "Environments/Dev");
+            fail("Expected conflicting versions to be rejected");
+        } catch (DeployitPluginException e) {
+            assertThat(e.getMessage(), containsString("Applications/B/2.0 and Applications/B/1.0"));
+        }
+        verify(deploymentService, never()).createTask(any(Deployment.class));
+    }
+
+    private static DeployCommand newTestModeCommand(DeploymentService deploymentService, TaskService taskService) {
+        JenkinsDeploymentOptions jenkinsOptions = new JenkinsDeploymentOptions("Environments/Dev", VersionKind.Packaged, false, false, true, false, true);
+        JenkinsDeploymentListener jenkinsDeploymentListener = new JenkinsDeploymentListener(new StreamBuildListener(System.out, Charset.defaultCharset()), true);
+        return new DeployCommand(deploymentService, taskService, mock(RepositoryService.class), jenkinsOptions, jenkinsDeploymentListener) {
+            @Override
+            void verifyPackageExistInRemoteRepository(String deploymentPackage) {
+            }
+        };
+    }
+
+    private static Deployment deploymentOf(String packageId) {
+        ConfigurationItem version = mock(ConfigurationItem.class);
+        when(version.getId()).thenReturn(packageId);
+        ConfigurationItem deployedApplication = mock(ConfigurationItem.class);
+        when(deployedApplication.<ConfigurationItem>getProperty("version")).thenReturn(version);
+        Deployment deployment = new Deployment();
+        deployment.setDeployedApplication(deployedApplication);
+        return deployment;
+    }
+
     public static class MyTestValidationException extends RuntimeException {
         public MyTestValidationException(final String message) {
             super(message);
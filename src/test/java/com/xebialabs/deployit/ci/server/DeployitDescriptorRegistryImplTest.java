@@ -0,0 +1,199 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.BasicClientConnectionManager;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.junit.Test;
+
+import com.xebialabs.deployit.booter.remote.BooterConfig;
+import com.xebialabs.deployit.booter.remote.DeployitCommunicator;
+import com.xebialabs.deployit.booter.remote.Proxies;
+import com.xebialabs.deployit.engine.api.ServerService;
+import com.xebialabs.deployit.engine.api.dto.ServerInfo;
+import com.xebialabs.deployit.engine.api.dto.ServerPluginInfo;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyKind;
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.base.BaseConfigurationItem;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeployitDescriptorRegistryImplTest {
+
+    private final BooterConfig booterConfig = BooterConfig.builder()
+            .withHost("xld-registry-test")
+            .withPort(4516)
+            .withCredentials("admin", "secret")
+            .build();
+
+    @Test
+    public void shouldResizePoolAndTimeoutOfRunningClient() {
+        PoolingClientConnectionManager pool = new PoolingClientConnectionManager();
+        DefaultHttpClient httpClient = new DefaultHttpClient(pool);
+        DeployitDescriptorRegistryImpl registry = new DeployitDescriptorRegistryImpl(booterConfig, communicatorWith(httpClient));
+
+        assertThat(registry.applyConnectionSettings(25, 4000), is(true));
+
+        assertThat(pool.getMaxTotal(), is(25));
+        assertThat(pool.getDefaultMaxPerRoute(), is(25));
+        assertThat(HttpConnectionParams.getSoTimeout(httpClient.getParams()), is(4000));
+    }
+
+    @Test
+    public void shouldReportClientWithoutConnectionPool() {
+        DefaultHttpClient httpClient = new DefaultHttpClient(new BasicClientConnectionManager());
+        DeployitDescriptorRegistryImpl registry = new DeployitDescriptorRegistryImpl(booterConfig, communicatorWith(httpClient));
+
+        assertThat(registry.applyConnectionSettings(25, 4000), is(false));
+    }
+
+    @Test
+    public void shouldKeepSettingsForBootWhenNotBooted() {
+        // nothing listens on the host, applying must not boot the communicator
+        DeployitDescriptorRegistryImpl registry = new DeployitDescriptorRegistryImpl(booterConfig);
+
+        assertThat(registry.applyConnectionSettings(25, 4000), is(true));
+    }
+
+    @Test
+    public void shouldCreateInstancesFromTemplate() throws Exception {
+        DeployitDescriptorRegistryImpl.CiTemplate template = new DeployitDescriptorRegistryImpl.CiTemplate(RecordingItem.class);
+        template.containments.put("resources", PropertyKind.LIST_OF_CI);
+        template.containments.put("members", PropertyKind.SET_OF_CI);
+        template.defaultValues.put("port", 8080);
+        template.defaultValues.put("secure", false);
+        Type type = Type.valueOf("test.Server");
+
+        RecordingItem first = (RecordingItem) template.newInstance(type, "Applications/app/1.0/server");
+        RecordingItem second = (RecordingItem) template.newInstance(type, "Applications/app/2.0/server");
+
+        assertThat(first.getId(), is("Applications/app/1.0/server"));
+        assertThat(first.getType(), is(type));
+        assertThat(first.properties.get("resources"), instanceOf(List.class));
+        assertThat(first.properties.get("members"), instanceOf(Set.class));
+        assertThat(first.properties.get("port"), is((Object) 8080));
+        assertThat(first.properties.get("secure"), is((Object) false));
+        // containment collections are filled per CI, they must never be shared
+        assertThat(second.properties.get("resources"), not(sameInstance(first.properties.get("resources"))));
+        assertThat(second.properties.get("members"), not(sameInstance(first.properties.get("members"))));
+    }
+
+    @Test
+    public void shouldKeepContainmentCollectionsTheClassCreates() throws Exception {
+        DeployitDescriptorRegistryImpl.CiTemplate template = new DeployitDescriptorRegistryImpl.CiTemplate(RecordingItem.class);
+        template.containments.put("initialized", PropertyKind.SET_OF_CI);
+
+        RecordingItem item = (RecordingItem) template.newInstance(Type.valueOf("test.Server"), "server");
+
+        assertThat(item.properties.get("initialized"), sameInstance((Object) RecordingItem.INITIALIZED));
+    }
+
+    /**
+     * Keeps its properties in a map, setting properties of a real CI needs the server's type system.
+     */
+    public static class RecordingItem extends BaseConfigurationItem {
+        static final Set<ConfigurationItem> INITIALIZED = new HashSet<ConfigurationItem>();
+
+        final Map<String, Object> properties = new HashMap<String, Object>();
+
+        public RecordingItem() {
+            properties.put("initialized", INITIALIZED);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getProperty(String name) {
+            return (T) properties.get(name);
+        }
+
+        @Override
+        public void setProperty(String name, Object value) {
+            properties.put(name, value);
+        }
+    }
+
+    private static DeployitCommunicator communicatorWith(DefaultHttpClient httpClient) {
+        DeployitCommunicator communicator = mock(DeployitCommunicator.class);
+        when(communicator.getHttpClient()).thenReturn(httpClient);
+        return communicator;
+    }
+
+    @Test
+    public void shouldRecordFirstFingerprintAndReloadOnlyWhenServerChanged() {
+        ServerInfo booted = serverInfo("10.0.1", "plugin-a:1.0");
+        ServerInfo unchanged = serverInfo("10.0.1", "plugin-a:1.0");
+        ServerInfo pluginUpgraded = serverInfo("10.0.1", "plugin-a:1.1");
+        ServerService serverService = mock(ServerService.class);
+        when(serverService.getInfo()).thenReturn(booted, unchanged, pluginUpgraded, pluginUpgraded);
+        DeployitDescriptorRegistryImpl registry = spy(new DeployitDescriptorRegistryImpl(booterConfig, communicatorWith(serverService)));
+        doNothing().when(registry).reload();
+        registry.typesCheckIntervalMillis = 0;
+
+        assertThat(registry.reloadIfTypesChanged(), is(false));
+        verify(registry, never()).reload();
+
+        assertThat(registry.reloadIfTypesChanged(), is(false));
+        verify(registry, never()).reload();
+
+        assertThat(registry.reloadIfTypesChanged(), is(true));
+        verify(registry).reload();
+
+        assertThat(registry.reloadIfTypesChanged(), is(false));
+        verify(registry, times(1)).reload();
+    }
+
+    @Test
+    public void shouldAnswerChecksWithinTheIntervalFromThePreviousCheck() {
+        ServerInfo booted = serverInfo("10.0.1", "plugin-a:1.0");
+        ServerInfo upgraded = serverInfo("10.0.2", "plugin-a:1.0");
+        ServerService serverService = mock(ServerService.class);
+        when(serverService.getInfo()).thenReturn(booted, upgraded);
+        DeployitDescriptorRegistryImpl registry = spy(new DeployitDescriptorRegistryImpl(booterConfig, communicatorWith(serverService)));
+        doNothing().when(registry).reload();
+        registry.typesCheckIntervalMillis = 60000;
+
+        registry.reloadIfTypesChanged();
+        assertThat(registry.reloadIfTypesChanged(), is(false));
+
+        verify(serverService, times(1)).getInfo();
+        verify(registry, never()).reload();
+    }
+
+    private static DeployitCommunicator communicatorWith(ServerService serverService) {
+        Proxies proxies = mock(Proxies.class);
+        when(proxies.getServerService()).thenReturn(serverService);
+        DeployitCommunicator communicator = mock(DeployitCommunicator.class);
+        when(communicator.getProxies()).thenReturn(proxies);
+        return communicator;
+    }
+
+    private static ServerInfo serverInfo(String version, String plugin) {
+        ServerPluginInfo pluginInfo = mock(ServerPluginInfo.class);
+        when(pluginInfo.getName()).thenReturn(plugin.split(":")[0]);
+        when(pluginInfo.getVersion()).thenReturn(plugin.split(":")[1]);
+        ServerInfo serverInfo = mock(ServerInfo.class);
+        when(serverInfo.getVersion()).thenReturn(version);
+        when(serverInfo.getPluginsInfo()).thenReturn(Arrays.asList(pluginInfo));
+        when(serverInfo.getClasspathEntries()).thenReturn(Arrays.asList("ext/", "plugins/plugin-a.jar"));
+        return serverInfo;
+    }
+}
@@ -0,0 +1,174 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+import com.xebialabs.deployit.booter.remote.BooterConfig;
+import com.xebialabs.deployit.booter.remote.DeployitCommunicator;
+import com.xebialabs.deployit.ci.DeployitPluginException;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.base.BaseConfigurationItem;
+import com.xebialabs.xltype.serialization.xstream.XStreamProvider;
+import com.xebialabs.xltype.serialization.xstream.XStreamReaderWriterJenkins;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PackageUploaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private BooterConfig booterConfig;
+    private PackageUploader uploader;
+    private final DeployitCommunicator communicator = mock(DeployitCommunicator.class);
+
+    private volatile int status = 200;
+    private volatile String response;
+    private volatile String requestPath;
+    private volatile String authorization;
+    private volatile String requestBody;
+
+    @BeforeClass
+    public static void registerConverter() {
+        XStreamReaderWriterJenkins.registerConverter(new UploadedPackageConverter());
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestPath = exchange.getRequestURI().getRawPath();
+                authorization = exchange.getRequestHeaders().getFirst("Authorization");
+                requestBody = new String(ByteStreams.toByteArray(exchange.getRequestBody()), Charsets.ISO_8859_1);
+                byte[] body = response.getBytes(Charsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+
+        booterConfig = BooterConfig.builder()
+                .withHost("localhost")
+                .withPort(server.getAddress().getPort())
+                .withCredentials("admin", "secret")
+                .build();
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        httpClient.getCredentialsProvider().setCredentials(AuthScope.ANY, new UsernamePasswordCredentials("admin", "secret"));
+        when(communicator.getHttpClient()).thenReturn(httpClient);
+        uploader = new PackageUploader(booterConfig, false);
+    }
+
+    @After
+    public void stopServer() {
+        uploader.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldUploadPackageAndReadImportedPackage() throws IOException {
+        File dar = temporaryFolder.newFile("app 1.0.dar");
+        Files.write("dar content", dar, Charsets.UTF_8);
+        response = "<test.UploadedPackage id=\"Applications/app/1.0\"/>";
+
+        ConfigurationItem imported = uploader.upload(dar, communicator, null);
+
+        assertThat(imported, instanceOf(UploadedPackage.class));
+        assertThat(imported.getId(), is("Applications/app/1.0"));
+        assertThat(((UploadedPackage) imported).booterConfigKey, is(booterConfig.getKey()));
+        assertThat(requestPath, endsWith("/package/upload/app%201.0.dar"));
+        assertThat(authorization, is("Basic YWRtaW46c2VjcmV0"));
+        assertThat(requestBody, containsString("name=\"fileData\""));
+        assertThat(requestBody, containsString("dar content"));
+    }
+
+    @Test
+    public void shouldEscapeReservedCharactersOfTheFileName() throws IOException {
+        File dar = temporaryFolder.newFile("app #2 100%?.dar");
+        Files.write("dar content", dar, Charsets.UTF_8);
+        response = "<test.UploadedPackage id=\"Applications/app/2\"/>";
+
+        uploader.upload(dar, communicator, null);
+
+        assertThat(requestPath, endsWith("/package/upload/app%20%232%20100%25%3F.dar"));
+    }
+
+    @Test
+    public void shouldReportRejectedUploadWithServerMessage() throws IOException {
+        File dar = temporaryFolder.newFile("app.dar");
+        Files.write("dar content", dar, Charsets.UTF_8);
+        status = 400;
+        response = "Application version already exists";
+
+        try {
+            uploader.upload(dar, communicator, null);
+            fail("Expected the rejected upload to fail");
+        } catch (DeployitPluginException e) {
+            assertThat(e.getMessage(), is("Upload of app.dar failed with status 400: Application version already exists"));
+        }
+    }
+
+    public static class UploadedPackage extends BaseConfigurationItem {
+        String booterConfigKey;
+    }
+
+    /**
+     * Stands in for the configuration item converter, which needs the server's type system.
+     */
+    @XStreamProvider(tagName = "test.UploadedPackage", readable = UploadedPackage.class)
+    public static class UploadedPackageConverter implements Converter {
+        @Override
+        public boolean canConvert(Class type) {
+            return type == UploadedPackage.class;
+        }
+
+        @Override
+        public void marshal(Object source, HierarchicalStreamWriter writer, MarshallingContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object unmarshal(HierarchicalStreamReader reader, UnmarshallingContext context) {
+            UploadedPackage uploaded = new UploadedPackage();
+            uploaded.setId(reader.getAttribute("id"));
+            uploaded.booterConfigKey = (String) context.get("BOOTER_CONFIG");
+            return uploaded;
+        }
+    }
+}
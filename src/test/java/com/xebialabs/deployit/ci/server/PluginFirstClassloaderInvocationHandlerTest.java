@@ -0,0 +1,94 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.reflect.Reflection;
+
+import com.xebialabs.deployit.ci.DeployitPluginException;
+
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PluginFirstClassloaderInvocationHandlerTest {
+
+    public interface Service {
+        ClassLoader contextClassLoader();
+
+        void fail(Throwable t) throws Throwable;
+    }
+
+    static class ServiceImpl implements Service {
+        @Override
+        public ClassLoader contextClassLoader() {
+            return Thread.currentThread().getContextClassLoader();
+        }
+
+        @Override
+        public void fail(Throwable t) throws Throwable {
+            throw t;
+        }
+    }
+
+    private final Service service = Reflection.newProxy(Service.class, new PluginFirstClassloaderInvocationHandler(new ServiceImpl(), "http://localhost:4516"));
+    private final ClassLoader callerClassLoader = new URLClassLoader(new URL[0], null);
+    private ClassLoader originalClassLoader;
+
+    @Before
+    public void setCallerClassLoader() {
+        originalClassLoader = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(callerClassLoader);
+    }
+
+    @After
+    public void restoreClassLoader() {
+        Thread.currentThread().setContextClassLoader(originalClassLoader);
+    }
+
+    @Test
+    public void shouldCallWithPluginClassLoaderAndRestoreCallerClassLoader() {
+        assertThat(service.contextClassLoader(), sameInstance(PluginFirstClassloaderInvocationHandler.getPluginClassLoader()));
+        assertThat(Thread.currentThread().getContextClassLoader(), sameInstance(callerClassLoader));
+    }
+
+    @Test
+    public void shouldWrapExceptionsOfTheTarget() throws Throwable {
+        IOException cause = new IOException("connection refused");
+        try {
+            service.fail(cause);
+            fail("Expected the exception to be wrapped");
+        } catch (DeployitPluginException e) {
+            assertThat(e.getCause(), sameInstance((Throwable) cause));
+        }
+        assertThat(Thread.currentThread().getContextClassLoader(), sameInstance(callerClassLoader));
+    }
+
+    @Test
+    public void shouldRethrowPluginExceptionsUnchanged() throws Throwable {
+        DeployitPluginException thrown = new DeployitPluginException("no such environment");
+        try {
+            service.fail(thrown);
+            fail("Expected the exception to be rethrown");
+        } catch (DeployitPluginException e) {
+            assertThat(e, sameInstance(thrown));
+        }
+    }
+
+    @Test
+    public void shouldRethrowErrorsUnchanged() throws Throwable {
+        OutOfMemoryError thrown = new OutOfMemoryError("test");
+        try {
+            service.fail(thrown);
+            fail("Expected the error to be rethrown");
+        } catch (Error e) {
+            assertThat(e, sameInstance((Error) thrown));
+        }
+        assertThat(Thread.currentThread().getContextClassLoader(), sameInstance(callerClassLoader));
+    }
+}
@@ -0,0 +1,68 @@
+package com.xebialabs.deployit.ci.server;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.protocol.ClientContext;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PreemptiveAuthenticationInterceptorTest {
+
+    @Test
+    public void shouldSendBasicAuthentication() throws Exception {
+        HttpRequest request = process(new PreemptiveAuthenticationInterceptor(false), "admin", "secret");
+        assertThat(request.getFirstHeader("Authorization").getValue(), is("Basic YWRtaW46c2VjcmV0"));
+    }
+
+    @Test
+    public void shouldSendPersonalAccessTokenAsBearerToken() throws Exception {
+        HttpRequest request = process(new PreemptiveAuthenticationInterceptor(true), "", "token");
+        assertThat(request.getFirstHeader("Authorization").getValue(), is("Bearer token"));
+    }
+
+    @Test
+    public void shouldSendBasicAuthenticationForEmptyUserNameWithoutPat() throws Exception {
+        HttpRequest request = process(new PreemptiveAuthenticationInterceptor(false), "", "token");
+        assertThat(request.getFirstHeader("Authorization").getValue(), is("Basic OnRva2Vu"));
+    }
+
+    @Test
+    public void shouldRecomputeHeaderWhenCredentialsChange() throws Exception {
+        PreemptiveAuthenticationInterceptor interceptor = new PreemptiveAuthenticationInterceptor(true);
+        process(interceptor, "", "old");
+        assertThat(process(interceptor, "", "new").getFirstHeader("Authorization").getValue(), is("Bearer new"));
+    }
+
+    @Test
+    public void shouldKeepExistingAuthorizationHeader() throws Exception {
+        HttpRequest request = new BasicHttpRequest("GET", "/deployit/server/info");
+        request.setHeader("Authorization", "Bearer preset");
+        new PreemptiveAuthenticationInterceptor(true).process(request, context("", "token"));
+        assertThat(request.getFirstHeader("Authorization").getValue(), is("Bearer preset"));
+    }
+
+    private static HttpRequest process(PreemptiveAuthenticationInterceptor interceptor, String userName, String password) throws Exception {
+        HttpRequest request = new BasicHttpRequest("GET", "/deployit/server/info");
+        interceptor.process(request, context(userName, password));
+        return request;
+    }
+
+    private static HttpContext context(String userName, String password) {
+        CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+        credentialsProvider.setCredentials(new AuthScope("xld", 4516), new UsernamePasswordCredentials(userName, password));
+        HttpContext context = new BasicHttpContext();
+        context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, new HttpHost("xld", 4516));
+        context.setAttribute(ClientContext.CREDS_PROVIDER, credentialsProvider);
+        return context;
+    }
+}
@@ -0,0 +1,38 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.booter.remote.RemotePropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyKind;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PropertyValueConverterTest {
+
+    @Test
+    public void shouldChooseConverterByKind() {
+        assertThat(PropertyValueConverter.forKind(PropertyKind.BOOLEAN), is(PropertyValueConverter.BOOLEAN));
+        assertThat(PropertyValueConverter.forKind(PropertyKind.LIST_OF_CI), is(PropertyValueConverter.LIST_OF_CI));
+        assertThat(PropertyValueConverter.forKind(PropertyKind.STRING), is(PropertyValueConverter.AS_IS));
+        assertThat(PropertyValueConverter.forKind(PropertyKind.ENUM), is(PropertyValueConverter.AS_IS));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldConvertStringForms() {
+        RemotePropertyDescriptor pd = new RemotePropertyDescriptor();
+        assertThat((Integer) PropertyValueConverter.INTEGER.convert("42", pd), is(42));
+        assertThat(PropertyValueConverter.INTEGER.convert("", pd), nullValue());
+        assertThat((Boolean) PropertyValueConverter.BOOLEAN.convert("true", pd), is(true));
+        assertThat((Set<String>) PropertyValueConverter.SET_OF_STRING.convert("a; b;a", pd), contains("a", "b"));
+        assertThat((Set<String>) PropertyValueConverter.SET_OF_STRING.convert("a\nb\n", pd), contains("a", "b"));
+        assertThat((Map<String, String>) PropertyValueConverter.MAP_STRING_STRING.convert("k=v&x=y", pd), hasEntry("x", "y"));
+    }
+}
@@ -0,0 +1,63 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.RateLimiter;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class ThrottledFileBodyTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldWriteFileContent() throws IOException {
+        byte[] content = randomContent(3 * ThrottledFileBody.CHUNK_SIZE + 17);
+        File file = temporaryFolder.newFile("app.dar");
+        Files.write(content, file);
+        ThrottledFileBody body = new ThrottledFileBody(file, Collections.singletonList(RateLimiter.create(Double.MAX_VALUE)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+
+        assertArrayEquals(content, out.toByteArray());
+        assertThat(body.getContentLength(), is((long) content.length));
+        assertThat(body.getFilename(), is("app.dar"));
+    }
+
+    @Test
+    public void shouldLimitThroughput() throws IOException {
+        File file = temporaryFolder.newFile("app.dar");
+        Files.write(randomContent(8 * ThrottledFileBody.CHUNK_SIZE), file);
+        // 1 MB/s: the first chunk is granted at once, each of the other seven waits 62.5 ms
+        ThrottledFileBody body = new ThrottledFileBody(file, Collections.singletonList(RateLimiter.create(16 * ThrottledFileBody.CHUNK_SIZE)));
+
+        long start = System.nanoTime();
+        body.writeTo(new ByteArrayOutputStream());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(elapsedMillis, greaterThanOrEqualTo(350L));
+        assertThat(elapsedMillis, lessThan(5000L));
+    }
+
+    static byte[] randomContent(int length) {
+        byte[] content = new byte[length];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+}
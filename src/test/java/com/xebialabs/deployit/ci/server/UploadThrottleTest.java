@@ -0,0 +1,157 @@
+package com.xebialabs.deployit.ci.server;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import com.xebialabs.deployit.ci.DeployitPluginException;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class UploadThrottleTest {
+
+    private final UploadThrottle throttle = new UploadThrottle();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldNotLimitByDefault() {
+        UploadThrottle.Permit first = throttle.acquire();
+        UploadThrottle.Permit second = throttle.acquire();
+        first.close();
+        second.close();
+        assertThat(throttle.getRateLimiter(), nullValue());
+    }
+
+    @Test
+    public void shouldWaitForAFreeSlot() throws Exception {
+        throttle.configure(1, 0);
+        UploadThrottle.Permit first = throttle.acquire();
+        Future<Boolean> second = acquireInBackground();
+        try {
+            second.get(200, TimeUnit.MILLISECONDS);
+            fail("Expected the second upload to wait");
+        } catch (TimeoutException expected) {
+        }
+
+        first.close();
+
+        assertThat(second.get(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void shouldCountRunningUploadsAgainstRaisedLimit() throws Exception {
+        throttle.configure(1, 0);
+        UploadThrottle.Permit first = throttle.acquire();
+        throttle.configure(2, 0);
+
+        UploadThrottle.Permit second = throttle.acquire();
+        // two uploads are running, the limit of two is reached
+        Future<Boolean> third = acquireInBackground();
+        assertWaiting(third);
+        first.close();
+
+        assertThat(third.get(5, TimeUnit.SECONDS), is(true));
+        second.close();
+    }
+
+    @Test
+    public void shouldReachLoweredLimitAsRunningUploadsFinish() throws Exception {
+        throttle.configure(2, 0);
+        UploadThrottle.Permit first = throttle.acquire();
+        UploadThrottle.Permit second = throttle.acquire();
+        throttle.configure(1, 0);
+
+        first.close();
+        // one upload is still running, the limit of one is reached
+        Future<Boolean> third = acquireInBackground();
+        assertWaiting(third);
+        second.close();
+
+        assertThat(third.get(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void shouldAdjustRateLimiterInPlace() {
+        throttle.configure(0, 100);
+        RateLimiter rateLimiter = throttle.getRateLimiter();
+        assertThat(rateLimiter.getRate(), closeTo(100 * 1024.0, 0.001));
+
+        throttle.configure(0, 200);
+        assertThat(throttle.getRateLimiter(), sameInstance(rateLimiter));
+        assertThat(rateLimiter.getRate(), closeTo(200 * 1024.0, 0.001));
+
+        throttle.configure(0, 0);
+        assertThat(throttle.getRateLimiter(), nullValue());
+    }
+
+    @Test
+    public void shouldKeepInterruptWhenInterruptedWhileWaiting() {
+        throttle.configure(1, 0);
+        UploadThrottle.Permit first = throttle.acquire();
+        Thread.currentThread().interrupt();
+        try {
+            throttle.acquire();
+            fail("Expected the interrupted wait to fail");
+        } catch (DeployitPluginException expected) {
+            assertThat(Thread.interrupted(), is(true));
+        } finally {
+            first.close();
+        }
+    }
+
+    @Test
+    public void shouldForgetThrottlesOfRemovedServers() {
+        UploadThrottle kept = UploadThrottle.forServer("http://kept-xld-throttle-test:4516");
+        UploadThrottle removed = UploadThrottle.forServer("http://removed-xld-throttle-test:4516");
+
+        UploadThrottle.retainServers(Collections.singleton("http://kept-xld-throttle-test:4516"));
+
+        assertThat(UploadThrottle.forServer("http://kept-xld-throttle-test:4516"), sameInstance(kept));
+        assertThat(UploadThrottle.forServer("http://removed-xld-throttle-test:4516"), not(sameInstance(removed)));
+    }
+
+    @Test
+    public void shouldShareThrottlePerServerUrl() {
+        UploadThrottle throttle = UploadThrottle.forServer("http://xld-throttle-test:4516");
+        assertThat(UploadThrottle.forServer("http://xld-throttle-test:4516"), sameInstance(throttle));
+        assertThat(UploadThrottle.forServer("http://other-xld-throttle-test:4516"), not(sameInstance(throttle)));
+    }
+
+    private static void assertWaiting(Future<Boolean> upload) throws Exception {
+        try {
+            upload.get(200, TimeUnit.MILLISECONDS);
+            fail("Expected the upload to wait for a slot");
+        } catch (TimeoutException expected) {
+        }
+    }
+
+    private Future<Boolean> acquireInBackground() {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                throttle.acquire().close();
+                return true;
+            }
+        });
+    }
+}
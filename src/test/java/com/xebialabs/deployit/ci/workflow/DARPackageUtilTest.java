@@ -3,9 +3,13 @@ package com.xebialabs.deployit.ci.workflow;
 import hudson.EnvVars;
 import org.junit.Test;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class DARPackageUtilTest {
 
@@ -48,6 +52,29 @@ public class DARPackageUtilTest {
         assertFileNames(manifestXml, 2, new String[]{"/libs/rest-o-rant-api.war", "/libs/test/folder"});
     }
 
+    @Test
+    public void shouldAddMissingChecksumsToManifest() {
+        String manifestXml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<udm.DeploymentPackage version=\"2.0\" application=\"rest-o-rant-api\">\n" +
+                "    <deployables>\n" +
+                "        <tomcat.War name=\"/rest-o-rant-api\" file=\"/libs/rest-o-rant-api.war\">\n" +
+                "        </tomcat.War>\n" +
+                "        <file.File name=\"/config\" file=\"/libs/config.properties\">\n" +
+                "            <checksum>given</checksum>\n" +
+                "        </file.File>\n" +
+                "    </deployables>\n" +
+                "</udm.DeploymentPackage>\n";
+        Map<String, String> checksums = new HashMap<>();
+        checksums.put("/libs/rest-o-rant-api.war", "da39a3ee5e6b4b0d3255bfef95601890afd80709");
+        checksums.put("/libs/config.properties", "computed");
+
+        String result = darPackageUtil.addChecksums(manifestXml, checksums);
+
+        assertTrue(result.contains("<checksum>da39a3ee5e6b4b0d3255bfef95601890afd80709</checksum>"));
+        assertTrue(result.contains("<checksum>given</checksum>"));
+        assertFalse(result.contains("computed"));
+    }
+
     private void assertFileNames(String manifestFileContent, int expectedLength, String[] fileNames) {
         List<String> filteredFiles = darPackageUtil.filterFiles(manifestFileContent);
         assertEquals(expectedLength, filteredFiles.size());
@@ -0,0 +1,55 @@
+package com.xebialabs.deployit.ci.workflow;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.ci.server.DeployitDescriptorRegistry;
+import com.xebialabs.deployit.ci.server.DeployitServer;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class XLDeployDeployStepTest {
+
+    private final DeployitServer server = mock(DeployitServer.class);
+
+    @Test
+    public void shouldSplitEnvironmentsWithoutSearching() {
+        assertThat(XLDeployDeployStep.resolveEnvironments(" Environments/Dev, ,Environments/Test ", server),
+                contains("Environments/Dev", "Environments/Test"));
+        verifyZeroInteractions(server);
+    }
+
+    @Test
+    public void shouldResolveWildcardAgainstRepository() {
+        when(server.search(DeployitDescriptorRegistry.UDM_ENVIRONMENT, "%-Prod")).thenReturn(Arrays.asList(
+                "Environments/EU/App-Prod", "Environments/EU/Db-Prod", "Environments/US/App-Prod", "Environments/EU/App-Prod-Old"));
+
+        assertThat(XLDeployDeployStep.resolveEnvironments("Environments/EU/%-Prod", server),
+                contains("Environments/EU/App-Prod", "Environments/EU/Db-Prod"));
+        verify(server).search(DeployitDescriptorRegistry.UDM_ENVIRONMENT, "%-Prod");
+    }
+
+    @Test
+    public void shouldTreatRegexCharactersLiterally() {
+        when(server.search(DeployitDescriptorRegistry.UDM_ENVIRONMENT, "App.%")).thenReturn(Arrays.asList(
+                "Environments/App.1", "Environments/AppX1", "Environments/App.(2)"));
+
+        assertThat(XLDeployDeployStep.resolveEnvironments("Environments/App.%", server),
+                contains("Environments/App.1", "Environments/App.(2)"));
+    }
+
+    @Test
+    public void shouldNotAddEnvironmentsTwice() {
+        when(server.search(DeployitDescriptorRegistry.UDM_ENVIRONMENT, "%")).thenReturn(Arrays.asList(
+                "Environments/Dev", "Environments/Test"));
+
+        assertThat(XLDeployDeployStep.resolveEnvironments("Environments/Dev,Environments/%", server),
+                contains("Environments/Dev", "Environments/Test"));
+    }
+}
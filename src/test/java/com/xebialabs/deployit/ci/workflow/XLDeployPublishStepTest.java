@@ -0,0 +1,79 @@
+package com.xebialabs.deployit.ci.workflow;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.ci.DeployitPluginException;
+import com.xebialabs.deployit.ci.util.JenkinsDeploymentListener;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.base.BaseConfigurationItem;
+
+import hudson.util.StreamTaskListener;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class XLDeployPublishStepTest {
+
+    private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    private final JenkinsDeploymentListener listener = new JenkinsDeploymentListener(new StreamTaskListener(log), false);
+
+    @Test
+    public void shouldRecordEveryImportedPackageAndReportFailuresTogether() throws InterruptedException {
+        RecordingPublisher publisher = new RecordingPublisher("b.dar", "d.dar");
+
+        try {
+            XLDeployPublishStep.publishAll(Arrays.asList("a.dar", "b.dar", "c.dar", "d.dar"), 2, publisher, listener);
+            fail("Expected the failed imports to be reported");
+        } catch (DeployitPluginException e) {
+            assertThat(e.getMessage(), containsString("[b.dar, d.dar]"));
+            assertThat(e.getCause().getMessage(), is("Cannot import b.dar"));
+        }
+
+        assertThat(publisher.published, containsInAnyOrder("Applications/a.dar", "Applications/c.dar"));
+        assertThat(log.toString(), containsString("Publishing b.dar failed: java.lang.IllegalStateException: Cannot import b.dar"));
+    }
+
+    @Test
+    public void shouldRecordOneActionPerPackage() throws InterruptedException {
+        RecordingPublisher publisher = new RecordingPublisher();
+
+        XLDeployPublishStep.publishAll(Arrays.asList("a.dar", "b.dar", "c.dar"), 8, publisher, listener);
+
+        assertThat(publisher.published, containsInAnyOrder("Applications/a.dar", "Applications/b.dar", "Applications/c.dar"));
+        assertThat(log.toString(), containsString("Publishing 3 packages, at most 3 at a time"));
+        assertThat(log.toString(), not(containsString("failed")));
+    }
+
+    private static class RecordingPublisher implements XLDeployPublishStep.PackagePublisher {
+        private final List<String> failing;
+        private final List<String> published = new CopyOnWriteArrayList<String>();
+
+        RecordingPublisher(String... failing) {
+            this.failing = Arrays.asList(failing);
+        }
+
+        @Override
+        public ConfigurationItem publish(String path) {
+            if (failing.contains(path)) {
+                throw new IllegalStateException("Cannot import " + path);
+            }
+            BaseConfigurationItem deploymentPackage = new BaseConfigurationItem();
+            deploymentPackage.setId("Applications/" + path);
+            return deploymentPackage;
+        }
+
+        @Override
+        public void published(ConfigurationItem deploymentPackage) {
+            published.add(deploymentPackage.getId());
+        }
+    }
+}